@@ -0,0 +1,62 @@
+package bguspl.set;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The source of time for the game: the dealer's countdown, the players' freezes and the table delays all go
+ * through it, so the game can run on real time or on virtual time.
+ */
+public interface Clock {
+
+    /**
+     * @return - the current time in nanoseconds (only meaningful compared with other readings of the same clock).
+     */
+    long nanoTime();
+
+    /**
+     * Blocks the calling thread for the given time.
+     *
+     * @param millis - the time to sleep, in milliseconds.
+     * @throws InterruptedException - if the thread was interrupted while sleeping.
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Blocks the calling thread until the clock reaches the deadline.
+     * By default this sleeps in whole milliseconds (rounded up).
+     *
+     * @param deadline - the time (see nanoTime) to sleep until.
+     * @throws InterruptedException - if the thread was interrupted while sleeping.
+     */
+    default void sleepUntil(long deadline) throws InterruptedException {
+        long left = deadline - nanoTime();
+        if (left > 0)
+            sleep(TimeUnit.NANOSECONDS.toMillis(left + 999_999));
+    }
+
+    /**
+     * Waits on the monitor until it is notified or until the clock reaches the deadline.
+     * The caller must hold the monitor, and (like Object.wait) should re-check its condition after returning.
+     *
+     * @param monitor  - the monitor to wait on.
+     * @param deadline - the time (see nanoTime) to wait until.
+     * @throws InterruptedException - if the thread was interrupted while waiting.
+     */
+    void waitUntil(Object monitor, long deadline) throws InterruptedException;
+
+    /**
+     * Makes the calling thread the one whose waits move the clock forward (the dealer).
+     * Real time moves by itself, so by default this does nothing.
+     *
+     * @param busy - true while the game still has work to do at the current time (e.g. key-presses the players haven't
+     *             handled yet); the clock doesn't move forward meanwhile.
+     */
+    default void drive(BooleanSupplier busy) {}
+
+    /**
+     * Tells the clock the calling thread has finished the work busy was true for (see drive), so the driver can move on.
+     * Real time moves by itself, so by default this does nothing.
+     */
+    default void idle() {}
+}
@@ -66,6 +66,16 @@ public class Config {
      */
     public final long turnTimeoutWarningMillis;
 
+    /**
+     * The number of milliseconds between refreshes of the turn countdown display
+     */
+    public final long timerRefreshMillis;
+
+    /**
+     * The number of milliseconds between refreshes of the turn countdown display while the warning is displayed
+     */
+    public final long timerWarningRefreshMillis;
+
     /**
      * The number of milliseconds a player gets frozen for when he scores a point
      */
@@ -76,6 +86,37 @@ public class Config {
      */
     public final long pointFreezeMillis;
 
+    /**
+     * The number of milliseconds a computer player waits between key presses
+     */
+    public final long computerKeyDelayMillis;
+
+    /**
+     * The largest number of keys a computer player presses per second (0 - no limit but computerKeyDelayMillis)
+     */
+    public final double computerKeysPerSecond;
+
+    /**
+     * The largest part of the time between key presses (and of the reaction time) a computer player adds or takes at
+     * random, between 0 and 1
+     */
+    public final double computerKeyJitter;
+
+    /**
+     * The number of milliseconds a computer player takes to react to new cards on the table or to the end of his freeze
+     */
+    public final long computerReactionMillis;
+
+    /**
+     * The way computer players choose their key presses: "random", "pair" (complete a pair of cards) or "perfect"
+     */
+    public final String computerStrategy;
+
+    /**
+     * The number of milliseconds a computer player playing "perfect" takes to find a set before pressing its keys
+     */
+    public final long computerPerfectDelayMillis;
+
     /**
      * The number of milliseconds to delay before removing/placing a card on the table
      */
@@ -86,6 +127,48 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * Whether to run the dealer and player threads on virtual threads (requires Java 21)
+     */
+    public final boolean virtualThreads;
+
+    /**
+     * The number of threads testing claimed SETs for the dealer (0 - the dealer tests them himself, the default, which
+     * was measured faster: see Dealer.verifiers)
+     */
+    public final int verifierThreads;
+
+    /**
+     * The game's random seed: the deck, the table and the computer players all draw from it (0 - a new seed for every
+     * game). When replaying, the seed of the game recorded.
+     */
+    public final long randomSeed;
+
+    /**
+     * The file to record the game's key-presses in, for replaying it ("" - none)
+     */
+    public final String inputLogFile;
+
+    /**
+     * The file of recorded key-presses to replay instead of the computer players' own ("" - none)
+     */
+    public final String replayFile;
+
+    /**
+     * The name of the game's binary event journal, whose segment files are name.0, name.1, ... ("" - none)
+     */
+    public final String journalFile;
+
+    /**
+     * The size of a journal segment file, in bytes
+     */
+    public final int journalSegmentBytes;
+
+    /**
+     * The time between flushes of the journal to the disk, in milliseconds
+     */
+    public final long journalFlushMillis;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -155,7 +238,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -206,10 +289,44 @@ public class Config {
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "25")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "5")) * 1000.0);
+        timerRefreshMillis = Math.max(1, (long) (Double.parseDouble(properties.getProperty("TimerRefreshSeconds", "1")) * 1000.0));
+        timerWarningRefreshMillis = Math.max(1, (long) (Double.parseDouble(properties.getProperty("TimerWarningRefreshSeconds", "0.05")) * 1000.0));
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "0")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "0")) * 1000.0);
+        computerKeyDelayMillis = (long) (Double.parseDouble(properties.getProperty("ComputerKeyDelaySeconds", "0")) * 1000.0);
+        computerKeysPerSecond = Math.max(0, Double.parseDouble(properties.getProperty("ComputerKeysPerSecond", "0")));
+        computerKeyJitter = Math.min(1, Math.max(0, Double.parseDouble(properties.getProperty("ComputerKeyJitter", "0"))));
+        computerReactionMillis = (long) (Double.parseDouble(properties.getProperty("ComputerReactionSeconds", "0")) * 1000.0);
+        String strategy = properties.getProperty("ComputerStrategy", "random").trim().toLowerCase();
+        if (!Arrays.asList("random", "pair", "perfect").contains(strategy)) {
+            logger.severe("unknown computer strategy " + strategy + ", computer players play random");
+            strategy = "random";
+        }
+        computerStrategy = strategy;
+        computerPerfectDelayMillis = (long) (Double.parseDouble(properties.getProperty("ComputerPerfectDelaySeconds", "1")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        virtualThreads = Boolean.parseBoolean(properties.getProperty("VirtualThreads", "False"));
+        if (virtualThreads && !VirtualThreads.supported())
+            logger.severe("virtual threads require Java 21 or later, running on platform threads");
+        verifierThreads = Math.max(0, Integer.parseInt(properties.getProperty("VerifierThreads", "0")));
+        inputLogFile = properties.getProperty("InputLogFile", "").trim();
+        String replay = properties.getProperty("ReplayFile", "").trim();
+        long seed = Long.parseLong(properties.getProperty("RandomSeed", "0").trim());
+        if (!replay.isEmpty()) {
+            try {
+                seed = InputLog.readSeed(replay);
+            } catch (IOException | NumberFormatException e) {
+                logger.severe("cannot replay " + replay + ": " + e.getMessage());
+                replay = "";
+            }
+        }
+        replayFile = replay;
+        randomSeed = seed;
+        journalFile = properties.getProperty("JournalFile", "").trim();
+        journalSegmentBytes = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(1, Long.parseLong(properties.getProperty("JournalSegmentKilobytes", "1024").trim())) * 1024);
+        journalFlushMillis = (long) (Double.parseDouble(properties.getProperty("JournalFlushSeconds", "0.1")) * 1000.0);
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
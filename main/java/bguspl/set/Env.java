@@ -1,5 +1,7 @@
 package bguspl.set;
 
+import java.util.Random;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 public class Env {
@@ -8,11 +10,37 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final Clock clock;
+    public final Executor executor; // runs the game's threads (see GameTask)
+    public final long seed; // the game's random seed, every random number generator of the game derives from it (see random)
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new SystemClock());
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock) {
+        this(logger, config, ui, util, clock, task -> new Thread(task).start());
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock, Executor executor) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.clock = clock;
+        this.executor = executor;
+        seed = config.randomSeed != 0 ? config.randomSeed : new Random().nextLong();
+    }
+
+    /**
+     * @param stream - which of the game's random number generators (the same stream gives the same numbers).
+     * @return - a new random number generator, seeded from the game's seed and the stream.
+     */
+    public Random random(long stream) {
+        // a SplitMix64 step, so the generators of nearby streams (and seeds) aren't alike
+        long z = seed + (stream + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
     }
 }
@@ -0,0 +1,226 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many headless games in one process on a bounded pool of threads.
+ * Each game has its own Env, Table, Dealer, Players and clock; only the configuration, the Util and the pool are shared.
+ * The dealer and player threads of a game block for most of the game, so a game starts only once the pool has a
+ * thread for each of them (see threadsPerGame), and it gives them back when all of them have ended.
+ * With VirtualThreads set in the configuration the games run on virtual threads instead, and the pool size only
+ * bounds the number of concurrent games.
+ *
+ * Usage: java bguspl.set.GameHost [games] [concurrent games, or a range such as 1-64] [config file] [virtual|real]
+ * A range runs the games at every power of two concurrency in it, to find where the throughput stops growing.
+ */
+public class GameHost implements AutoCloseable {
+
+    /**
+     * The threads shared by all games (or a new virtual thread per task).
+     */
+    private final ExecutorService pool;
+
+    /**
+     * The pool threads not reserved by a running game.
+     */
+    private final Semaphore freeThreads;
+
+    /**
+     * The number of threads in the pool.
+     */
+    private final int threads;
+
+    /**
+     * The number of games running now, and the largest number seen.
+     */
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile int peakRunning;
+
+    /**
+     * Runs the tasks of a single game on the pool, and ends the game once they have all ended.
+     */
+    private class GameExecutor implements Executor {
+
+        /**
+         * The tasks submitted that haven't ended yet.
+         */
+        private final AtomicInteger tasks = new AtomicInteger();
+
+        /**
+         * Called when the last task ends.
+         */
+        private volatile Runnable onEnd;
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.incrementAndGet();
+            pool.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    if (tasks.decrementAndGet() == 0)
+                        onEnd.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * @param threads        - the number of threads shared by all games.
+     * @param virtualThreads - true iff the games run on virtual threads (then threads only bounds the running games).
+     */
+    public GameHost(int threads, boolean virtualThreads) {
+        this.threads = threads;
+        freeThreads = new Semaphore(threads, true);
+        if (virtualThreads) {
+            pool = VirtualThreads.newExecutor();
+        } else {
+            AtomicInteger created = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(task, "game-host-" + created.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            pool = executor;
+        }
+    }
+
+    /**
+     * @param config - the game configuration.
+     * @return - the number of threads a game needs: the dealer, the players and the computer players' key presses.
+     */
+    public static int threadsPerGame(Config config) {
+        return 1 + config.players + (config.computerPlayers > 0 ? 1 : 0);
+    }
+
+    /**
+     * Starts a game once the pool has the threads it needs (blocks until then).
+     *
+     * @param name - the name of the dealer thread.
+     * @return - completes with the statistics of the game when it ends.
+     * @throws InterruptedException - if interrupted while waiting for threads.
+     */
+    CompletableFuture<Simulation.GameStats> start(Logger logger, Config config, Util util, Clock clock, String name)
+            throws InterruptedException {
+        int needed = threadsPerGame(config);
+        if (needed > threads)
+            throw new IllegalArgumentException("a game needs " + needed + " threads, the pool has " + threads);
+        freeThreads.acquire(needed);
+
+        GameExecutor executor = new GameExecutor();
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), util, clock, executor);
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        CompletableFuture<Simulation.GameStats> result = new CompletableFuture<>();
+        RuntimeException[] failure = new RuntimeException[1];
+        long start = System.nanoTime();
+        long gameStart = clock.nanoTime();
+        executor.onEnd = () -> {
+            running.decrementAndGet();
+            freeThreads.release(needed);
+            if (failure[0] != null)
+                result.completeExceptionally(failure[0]);
+            else
+                result.complete(Simulation.stats(dealer, players, System.nanoTime() - start, clock.nanoTime() - gameStart));
+        };
+
+        peakRunning = Math.max(peakRunning, running.incrementAndGet());
+        new GameTask(() -> {
+            try {
+                dealer.run();
+            } catch (RuntimeException e) {
+                failure[0] = e;
+                dealer.terminate(); // let the players end, so the game's threads go back to the pool
+            }
+        }, name).start(executor);
+        return result;
+    }
+
+    /**
+     * @return - the largest number of games that ran at the same time.
+     */
+    public int peakRunning() {
+        return peakRunning;
+    }
+
+    /**
+     * Stops the pool (running games are interrupted).
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        String[] range = (args.length > 1 ? args[1] : "1-64").split("-");
+        int minConcurrent = Math.max(1, Integer.parseInt(range[0]));
+        int maxConcurrent = Math.max(minConcurrent, Integer.parseInt(range[range.length - 1]));
+        String configFilename = args.length > 2 ? args[2] : "config.properties";
+        boolean virtualTime = args.length <= 3 || !args[3].equals("real");
+
+        Logger logger = Logger.getLogger("SetGameHostLogger");
+        logger.setUseParentHandlers(false);
+        Properties properties = Config.loadProperties(configFilename, logger);
+        Simulation.headless(properties, virtualTime);
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        boolean virtualThreads = config.virtualThreads && VirtualThreads.supported();
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        // the game classes print their progress to the console, which would swamp the report
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(Simulation.NULL_OUTPUT));
+        try {
+            for (int concurrent = minConcurrent; concurrent <= maxConcurrent; concurrent *= 2) {
+                int threads = concurrent * threadsPerGame(config);
+                int toRun = Math.max(games, concurrent);
+                threadBean.resetPeakThreadCount();
+
+                try (GameHost host = new GameHost(threads, virtualThreads)) {
+                    List<CompletableFuture<Simulation.GameStats>> results = new ArrayList<>(toRun);
+                    long start = System.nanoTime();
+                    for (int game = 0; game < toRun; ++game) {
+                        Clock clock = virtualTime ? new VirtualClock() : new SystemClock();
+                        results.add(host.start(logger, config, util, clock, "dealer-" + game));
+                    }
+                    Simulation.GameStats[] stats = new Simulation.GameStats[toRun];
+                    for (int game = 0; game < toRun; ++game)
+                        stats[game] = results.get(game).get();
+                    long elapsed = System.nanoTime() - start;
+
+                    out.printf("%d concurrent games on %d %s threads (peak %d games, %d live platform threads in the JVM):%n",
+                            concurrent, threads, virtualThreads ? "virtual" : "pooled", host.peakRunning(), threadBean.getPeakThreadCount());
+                    Simulation.report(out, stats, elapsed);
+                }
+                if (concurrent > maxConcurrent / 2) break; // don't overflow
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
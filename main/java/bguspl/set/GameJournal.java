@@ -0,0 +1,529 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only journal of a game's events (cards dealt and removed, tokens, claims, verdicts, scores, reshuffles and
+ * winners), in fixed size binary records written straight into memory mapped segment files: "name.0", "name.1", ...
+ * Each segment is mapped at its full size when it is opened, and starts with a header record.
+ *
+ * Any thread appends without locking: it takes the next record index with one atomic increment and writes the record in
+ * place. The game's threads never map a segment (that is file system work, under a lock): the journal's own thread maps
+ * the segments ahead of them, by twice the records appended in the last flush interval and at least half a segment, and
+ * forces the segments to the disk every flush interval. A record whose segment isn't mapped yet is dropped and counted
+ * (see dropped); the reader counts the records never written before the last one that was as missing, so a journal with
+ * gaps says so even if the game crashed before it could report its drops. The records written survive a crash of the
+ * game as soon as they are written (they are in the file's pages), and a crash of the machine once flushed.
+ *
+ * The records are in the order their indexes were taken. That is the order of each thread's own events, but not a
+ * causal order across threads: a thread takes the index after the event (e.g. after its token is on the table's board),
+ * so the record of another thread's later event may come first, e.g. the dealer's CLEAR of a slot before the TOKEN it
+ * removed. The times on the game's clock don't settle it either (they are read before the index is taken). Rebuilding
+ * the board from a journal has to allow for a token record of a slot or player that was cleared meanwhile.
+ *
+ * A record is RECORD_BYTES long: a checksum of the rest (and of the record's index), the event type, the time on the
+ * game's clock since the game started, and up to four ints of event data. A record that was reserved but not written
+ * (or only in part) when the game crashed fails its checksum, and the reader skips it (see read, and JournalReader).
+ */
+public class GameJournal implements AutoCloseable {
+
+    /**
+     * The size of a record, in bytes.
+     */
+    public static final int RECORD_BYTES = 32;
+
+    /**
+     * The offsets in a record of the checksum, the type, the time and the data.
+     */
+    private static final int CHECKSUM = 0, TYPE = 4, TIME = 8, DATA = 16;
+
+    /**
+     * The last int of a segment header's data.
+     */
+    private static final int MAGIC = 0x5345544A; // "SETJ"
+
+    /**
+     * The verdicts in VERDICT records.
+     */
+    public static final int NOT_COMPLETE = 0, LEGAL = 1, ILLEGAL = -1;
+
+    /**
+     * The types of records, and the meaning of their data.
+     */
+    public enum Type {
+        SEGMENT,    // segment number, records in a segment, record size, MAGIC (the time is the game's seed)
+        START,      // players, table size, feature size
+        DEAL,       // slot, card
+        REMOVE,     // slot, card
+        TOKEN,      // player, slot
+        UNTOKEN,    // player, slot
+        CLEAR,      // slot whose tokens were all removed (-1 for all the slots)
+        CLAIM,      // player, then up to three slots (-1 for none)
+        CLAIM_MORE, // player, then up to three more slots of his claim (for features of more than 3 cards)
+        VERDICT,    // player, verdict (LEGAL, ILLEGAL or NOT_COMPLETE)
+        SCORE,      // player, score
+        RESHUFFLE,  // number of reshuffles so far
+        WINNER;     // player, score
+
+        /**
+         * @return - the type's code in a record (0 is never written).
+         */
+        byte code() {
+            return (byte) (ordinal() + 1);
+        }
+
+        /**
+         * @return - the type of a code, null if there is none.
+         */
+        static Type of(int code) {
+            Type[] types = values();
+            return code >= 1 && code <= types.length ? types[code - 1] : null;
+        }
+    }
+
+    /**
+     * A record read from a journal.
+     */
+    public static class Record {
+        public final long index;
+        public final Type type;
+        public final long time;
+        public final int a, b, c, d;
+
+        public Record(long index, Type type, long time, int a, int b, int c, int d) {
+            this.index = index;
+            this.type = type;
+            this.time = time;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %s @%d [%d, %d, %d, %d]", index, type, time, a, b, c, d);
+        }
+    }
+
+    /**
+     * The name the segments' names start with.
+     */
+    private final String filename;
+
+    /**
+     * The game's clock, and its time when the game started.
+     */
+    private final Clock clock;
+    private final long origin;
+
+    /**
+     * The game's random seed (kept in the segment headers).
+     */
+    private final long seed;
+
+    /**
+     * The size of a segment file, and the number of records in it after its header.
+     */
+    private final int segmentBytes;
+    private final int perSegment;
+
+    /**
+     * The index of the next record to append (the records of a segment are numbered on from the previous one's).
+     */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * The segments mapped so far, by number (copied on write, guarded by this; only the constructor and the journal's
+     * thread map them).
+     */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * The number of records dropped because the journal's thread hadn't mapped their segment yet.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The first error mapping or flushing a segment (guarded by this).
+     */
+    private IOException failure;
+
+    /**
+     * Maps the segments ahead and flushes them.
+     */
+    private final Thread flusher;
+    private final long flushMillis;
+    private volatile boolean closed;
+
+    /**
+     * Creates the journal of a game that starts now (replacing the segments of an earlier journal of that name).
+     *
+     * @param filename     - the name the segments' names start with.
+     * @param seed         - the game's random seed.
+     * @param clock        - the game's clock.
+     * @param segmentBytes - the size of a segment file (at least two records).
+     * @param flushMillis  - the time between flushes of the segments to the disk.
+     * @throws IOException - if the first segment can't be created.
+     */
+    public GameJournal(String filename, long seed, Clock clock, int segmentBytes, long flushMillis) throws IOException {
+        this.filename = filename;
+        this.clock = clock;
+        this.segmentBytes = Math.max(2, segmentBytes / RECORD_BYTES) * RECORD_BYTES;
+        perSegment = this.segmentBytes / RECORD_BYTES - 1;
+        this.flushMillis = Math.max(1, flushMillis);
+        this.seed = seed;
+        for (int number = 0; Files.deleteIfExists(segmentPath(filename, number)); ++number)
+            ; // a shorter game mustn't leave the segments of a longer one behind
+        synchronized (this) {
+            map(0);
+            map(1); // the journal's thread has until the first one fills up to map the next
+        }
+        origin = clock.nanoTime();
+        flusher = new Thread(this::flushLoop, Thread.currentThread().getName() + "-journal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Records the start of the game.
+     */
+    public void start(int players, int tableSize, int featureSize) {
+        append(Type.START, players, tableSize, featureSize, 0);
+    }
+
+    /**
+     * Records a card dealt to a slot.
+     */
+    public void deal(int slot, int card) {
+        append(Type.DEAL, slot, card, 0, 0);
+    }
+
+    /**
+     * Records a card removed from a slot.
+     */
+    public void remove(int slot, int card) {
+        append(Type.REMOVE, slot, card, 0, 0);
+    }
+
+    /**
+     * Records a token placed by a player.
+     */
+    public void token(int player, int slot) {
+        append(Type.TOKEN, player, slot, 0, 0);
+    }
+
+    /**
+     * Records a token of a player removed.
+     */
+    public void untoken(int player, int slot) {
+        append(Type.UNTOKEN, player, slot, 0, 0);
+    }
+
+    /**
+     * Records all the tokens removed from a slot (-1 - from all the slots).
+     */
+    public void clear(int slot) {
+        append(Type.CLEAR, slot, 0, 0, 0);
+    }
+
+    /**
+     * Records a SET claimed by a player (in as many records as its slots need).
+     */
+    public void claim(int player, int[] slots) {
+        for (int i = 0; i == 0 || i < slots.length; i += 3)
+            append(i == 0 ? Type.CLAIM : Type.CLAIM_MORE, player, at(slots, i), at(slots, i + 1), at(slots, i + 2));
+    }
+
+    private static int at(int[] slots, int i) {
+        return i < slots.length ? slots[i] : -1;
+    }
+
+    /**
+     * Records the verdict on a player's claim (LEGAL, ILLEGAL or NOT_COMPLETE).
+     */
+    public void verdict(int player, int verdict) {
+        append(Type.VERDICT, player, verdict, 0, 0);
+    }
+
+    /**
+     * Records a player's new score.
+     */
+    public void score(int player, int score) {
+        append(Type.SCORE, player, score, 0, 0);
+    }
+
+    /**
+     * Records a reshuffle of the table.
+     */
+    public void reshuffle(int reshuffles) {
+        append(Type.RESHUFFLE, reshuffles, 0, 0, 0);
+    }
+
+    /**
+     * Records a winner of the game.
+     */
+    public void winner(int player, int score) {
+        append(Type.WINNER, player, score, 0, 0);
+    }
+
+    /**
+     * Appends a record (called by any thread, after the event, see the class doc about the order of the records).
+     */
+    private void append(Type type, int a, int b, int c, int d) {
+        if (closed) // e.g. a player thread still winding down
+            return;
+        long time = clock.nanoTime() - origin;
+        long index = next.getAndIncrement();
+        ByteBuffer segment = segment(index / perSegment);
+        if (segment != null)
+            put(segment, (int) (index % perSegment + 1) * RECORD_BYTES, index, type, time, a, b, c, d);
+        else
+            dropped.incrementAndGet();
+    }
+
+    /**
+     * Writes a record in place (absolute puts only, so threads writing different records don't interfere).
+     */
+    private static void put(ByteBuffer segment, int at, long index, Type type, long time, int a, int b, int c, int d) {
+        segment.putLong(at + TIME, time);
+        segment.putInt(at + DATA, a);
+        segment.putInt(at + DATA + 4, b);
+        segment.putInt(at + DATA + 8, c);
+        segment.putInt(at + DATA + 12, d);
+        segment.put(at + TYPE, type.code());
+        segment.putInt(at + CHECKSUM, checksum(index, type.code(), time, a, b, c, d));
+    }
+
+    /**
+     * @param number - a segment number.
+     * @return - the segment, null if the journal's thread hasn't mapped it (yet, or it couldn't).
+     */
+    private ByteBuffer segment(long number) {
+        MappedByteBuffer[] mapped = segments;
+        return number < mapped.length ? mapped[(int) number] : null;
+    }
+
+    /**
+     * Creates, maps and heads the next segment (the caller holds this).
+     */
+    private void map(int number) throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(segmentPath(filename, number), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes); // the mapping outlives the channel
+        }
+        put(segment, 0, -1 - number, Type.SEGMENT, seed, number, perSegment, RECORD_BYTES, MAGIC);
+        MappedByteBuffer[] mapped = Arrays.copyOf(segments, number + 1);
+        mapped[number] = segment;
+        segments = mapped;
+    }
+
+    /**
+     * The journal's thread: maps segments ahead of the writers, by twice what they appended in the last interval (and at
+     * least half a segment), and flushes the segments written since the last flush.
+     */
+    private void flushLoop() {
+        int flushedFrom = 0; // the segments before it were flushed after they had filled up
+        long appended = 0; // the records appended by the last interval
+        while (!closed) {
+            try {
+                Thread.sleep(flushMillis);
+            } catch (InterruptedException e) { break; }
+            synchronized (this) {
+                try {
+                    long now = next.get();
+                    long margin = Math.max(perSegment / 2, 2 * (now - appended));
+                    appended = now;
+                    while (now + margin >= (long) segments.length * perSegment)
+                        map(segments.length);
+                } catch (IOException e) { // the game goes on, the journal is cut short
+                    if (failure == null) failure = e;
+                }
+            }
+            flushedFrom = flush(flushedFrom);
+        }
+    }
+
+    /**
+     * Forces the segments written to the disk.
+     *
+     * @param from - the first segment that may have records not flushed yet.
+     * @return - the first segment that may have records not flushed after this flush.
+     */
+    private int flush(int from) {
+        long written = next.get();
+        MappedByteBuffer[] mapped = segments;
+        int last = (int) Math.min(mapped.length - 1, written / perSegment);
+        for (int number = from; number <= last; ++number) {
+            try {
+                mapped[number].force();
+            } catch (RuntimeException e) { // force reports I/O errors unchecked
+                synchronized (this) {
+                    if (failure == null) failure = new IOException("cannot flush " + segmentPath(filename, number), e);
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Stops the journal's thread and flushes what is left (records appended meanwhile may be lost, later ones are
+     * dropped).
+     *
+     * @throws IOException - if the journal couldn't be written (now or while the game was running).
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        flusher.interrupt();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(0);
+        synchronized (this) {
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * @return - the number of records appended (including those dropped).
+     */
+    public long size() {
+        return next.get();
+    }
+
+    /**
+     * @return - the number of records dropped because the journal's thread hadn't mapped their segment yet.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return - the number of segments mapped so far.
+     */
+    int mapped() {
+        return segments.length;
+    }
+
+    /**
+     * @param filename - the name the segments' names start with.
+     * @param number   - a segment number.
+     * @return - the path of the segment.
+     */
+    public static Path segmentPath(String filename, int number) {
+        return Paths.get(filename + "." + number);
+    }
+
+    /**
+     * Reads a journal's records, skipping those that weren't written in full (torn) or at all (missing: dropped, or
+     * still being written). Missing records can only be told from the end of the journal when a record comes after
+     * them, so those after the last record written aren't counted.
+     *
+     * @param filename - the name the segments' names start with.
+     * @param skipped  - if not null, gets the number of torn records added to its first element, and the number of
+     *                 missing ones to its second element (if it has one).
+     * @return - the records, in the order they were appended.
+     * @throws IOException - if the first segment can't be read, or a segment isn't one.
+     */
+    public static List<Record> read(String filename, long[] skipped) throws IOException {
+        List<Record> records = new ArrayList<>();
+        long blanks = 0; // the records never written since the last one that was
+        for (int number = 0; number == 0 || Files.exists(segmentPath(filename, number)); ++number) {
+            Path path = segmentPath(filename, number);
+            ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (segment.capacity() < 2 * RECORD_BYTES || !valid(segment, 0, -1 - number)
+                    || segment.get(TYPE) != Type.SEGMENT.code() || segment.getInt(DATA + 12) != MAGIC
+                    || segment.getInt(DATA + 8) != RECORD_BYTES)
+                throw new IOException(path + " is not a journal segment");
+            int perSegment = segment.getInt(DATA + 4);
+            for (int slot = 1; slot <= perSegment && (slot + 1) * RECORD_BYTES <= segment.capacity(); ++slot) {
+                int at = slot * RECORD_BYTES;
+                long index = (long) number * perSegment + slot - 1;
+                if (blank(segment, at)) {
+                    ++blanks;
+                    continue;
+                }
+                if (valid(segment, at, index))
+                    records.add(new Record(index, Type.of(segment.get(at + TYPE)), segment.getLong(at + TIME),
+                            segment.getInt(at + DATA), segment.getInt(at + DATA + 4),
+                            segment.getInt(at + DATA + 8), segment.getInt(at + DATA + 12)));
+                else if (skipped != null)
+                    ++skipped[0];
+                if (skipped != null && skipped.length > 1)
+                    skipped[1] += blanks;
+                blanks = 0;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return - the seed of the game journaled (from its first segment's header).
+     * @throws IOException - if the first segment can't be read.
+     */
+    public static long readSeed(String filename) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_BYTES);
+        try (FileChannel channel = FileChannel.open(segmentPath(filename, 0), StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0)
+                ;
+        }
+        if (!valid(header, 0, -1))
+            throw new IOException(segmentPath(filename, 0) + " is not a journal segment");
+        return header.getLong(TIME);
+    }
+
+    /**
+     * @return - true iff the record at the offset was written in full, as the record of the index.
+     */
+    private static boolean valid(ByteBuffer segment, int at, long index) {
+        byte code = segment.get(at + TYPE);
+        return Type.of(code) != null && segment.getInt(at + CHECKSUM) == checksum(index, code, segment.getLong(at + TIME),
+                segment.getInt(at + DATA), segment.getInt(at + DATA + 4), segment.getInt(at + DATA + 8),
+                segment.getInt(at + DATA + 12));
+    }
+
+    /**
+     * @return - true iff the record at the offset was never written.
+     */
+    private static boolean blank(ByteBuffer segment, int at) {
+        for (int i = 0; i < RECORD_BYTES; i += 8)
+            if (segment.getLong(at + i) != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * @return - the checksum of a record (a 64 bit mix of its fields, folded to 32 bits).
+     */
+    private static int checksum(long index, byte type, long time, int a, int b, int c, int d) {
+        long h = mix(index ^ 0x9E3779B97F4A7C15L);
+        h = mix(h ^ type);
+        h = mix(h ^ time);
+        h = mix(h ^ ((long) a << 32 | b & 0xFFFFFFFFL));
+        h = mix(h ^ ((long) c << 32 | d & 0xFFFFFFFFL));
+        return (int) (h ^ h >>> 32);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
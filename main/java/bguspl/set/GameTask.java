@@ -0,0 +1,112 @@
+package bguspl.set;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * A game thread (the dealer, a player or a computer player's key presses) that runs as a task on an executor, so it
+ * may borrow a pooled thread instead of owning one. Supports what the game needs from a Thread: start, interrupt and
+ * join.
+ *
+ * A pooled thread outlives the task, so the task is interrupted only while it runs, and its interrupt status is
+ * cleared before the thread goes back to the pool.
+ */
+public class GameTask implements Runnable {
+
+    /**
+     * The code to run.
+     */
+    private final Runnable target;
+
+    /**
+     * The name of the thread while it runs the task.
+     */
+    private final String name;
+
+    /**
+     * The thread running the task, null before it starts and after it ends (guarded by this).
+     */
+    private Thread thread;
+
+    /**
+     * True iff the task was interrupted before it started (guarded by this).
+     */
+    private boolean interruptPending;
+
+    /**
+     * True iff the task has ended (guarded by this).
+     */
+    private boolean done;
+
+    /**
+     * Released when the task ends.
+     */
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * @param target - the code to run.
+     * @param name   - the name of the thread while it runs the task.
+     */
+    public GameTask(Runnable target, String name) {
+        this.target = target;
+        this.name = name;
+    }
+
+    /**
+     * Submits the task.
+     *
+     * @param executor - the executor to run the task on.
+     */
+    public void start(Executor executor) {
+        executor.execute(this);
+    }
+
+    @Override
+    public void run() {
+        Thread current = Thread.currentThread();
+        String previousName = current.getName();
+        synchronized (this) {
+            thread = current;
+            if (interruptPending)
+                current.interrupt();
+        }
+        current.setName(name);
+        try {
+            target.run();
+        } finally {
+            synchronized (this) {
+                thread = null;
+                done = true;
+                Thread.interrupted(); // don't leak an interrupt to the next task of a pooled thread
+            }
+            current.setName(previousName);
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Interrupts the thread running the task (or the task as soon as it starts). Does nothing once the task ended.
+     */
+    public synchronized void interrupt() {
+        if (thread != null)
+            thread.interrupt();
+        else if (!done)
+            interruptPending = true;
+    }
+
+    /**
+     * Waits for the task to end.
+     *
+     * @throws InterruptedException - if the calling thread was interrupted while waiting.
+     */
+    public void join() throws InterruptedException {
+        finished.await();
+    }
+
+    /**
+     * @return - the name of the thread while it runs the task.
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,139 @@
+package bguspl.set;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A record of a game's input: every key-press queued to a player (by a human or a computer player), with the time it
+ * was pressed and the table's epoch then, and the game's random seed. Replaying it on the same configuration (see
+ * ex.InputReplay) plays the same game again.
+ *
+ * The log is a text file: a header line with the seed, then a line "time player slot epoch" per key-press, the time in
+ * nanoseconds of the game's clock since the game started.
+ */
+public class InputLog implements AutoCloseable {
+
+    /**
+     * The start of the header line, followed by the seed.
+     */
+    private static final String HEADER = "# set input log, seed ";
+
+    /**
+     * A key-press read from a log.
+     */
+    public static class Entry {
+        public final long time;
+        public final int player;
+        public final int slot;
+        public final int epoch;
+
+        public Entry(long time, int player, int slot, int epoch) {
+            this.time = time;
+            this.player = player;
+            this.slot = slot;
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * The game's clock, and its time when the game started.
+     */
+    private final Clock clock;
+    private final long origin;
+
+    /**
+     * The log file, and the first error writing it (guarded by this).
+     */
+    private final Writer out;
+    private IOException failure;
+
+    /**
+     * Creates a log file (replacing an existing one) for a game that starts now.
+     *
+     * @param filename - the name of the log file.
+     * @param seed     - the game's random seed.
+     * @param clock    - the game's clock.
+     * @throws IOException - if the file can't be written.
+     */
+    public InputLog(String filename, long seed, Clock clock) throws IOException {
+        this.clock = clock;
+        out = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8);
+        out.write(HEADER + seed + System.lineSeparator());
+        origin = clock.nanoTime();
+    }
+
+    /**
+     * Records a key-press (called by any thread pressing keys).
+     *
+     * @param player - the id of the player.
+     * @param slot   - the slot pressed.
+     * @param epoch  - the table's epoch when it was pressed.
+     */
+    public void record(int player, int slot, int epoch) {
+        long time = clock.nanoTime() - origin;
+        synchronized (this) {
+            try {
+                out.write(time + " " + player + " " + slot + " " + epoch + System.lineSeparator());
+            } catch (IOException e) { // the game goes on, the log is cut short
+                if (failure == null) failure = e;
+            }
+        }
+    }
+
+    /**
+     * Writes out what is left and closes the file.
+     *
+     * @throws IOException - if the log couldn't be written (now or while recording).
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * @param filename - the name of a log file.
+     * @return - the random seed of the game logged.
+     * @throws IOException - if the file can't be read or isn't a log.
+     */
+    public static long readSeed(String filename) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            if (header == null || !header.startsWith(HEADER))
+                throw new IOException(filename + " is not an input log");
+            return Long.parseLong(header.substring(HEADER.length()).trim());
+        }
+    }
+
+    /**
+     * @param filename - the name of a log file.
+     * @return - the key-presses logged, in the order they were pressed.
+     * @throws IOException - if the file can't be read or isn't a log.
+     */
+    public static List<Entry> read(String filename) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (line == null || !line.startsWith(HEADER))
+                throw new IOException(filename + " is not an input log");
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] fields = line.split(" ");
+                try {
+                    entries.add(new Entry(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3])));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException(filename + ": bad key-press line " + line);
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,75 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a game's journal (see GameJournal), an event per line:
+ * java bguspl.set.JournalReader name [--raw]
+ * where name is the journal's name (JournalFile), whose segments are name.0, name.1, ...
+ * The events of different threads at about the same time may be printed out of the order they happened in (see
+ * GameJournal).
+ */
+public class JournalReader {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: JournalReader journal-name [--raw]");
+            System.exit(2);
+        }
+        boolean raw = args.length > 1 && args[1].equals("--raw");
+        long[] skipped = new long[2]; // torn, missing
+        List<GameJournal.Record> records = GameJournal.read(args[0], skipped);
+        System.out.println("# journal " + args[0] + ", seed " + GameJournal.readSeed(args[0]) + ", " + records.size()
+                + " records" + (skipped[0] > 0 ? ", " + skipped[0] + " torn records skipped" : "")
+                + (skipped[1] > 0 ? ", " + skipped[1] + " records missing (dropped, the journal has gaps)" : ""));
+        for (GameJournal.Record record : records)
+            System.out.println(raw ? record.toString() : describe(record));
+    }
+
+    /**
+     * @param record - a journal record.
+     * @return - the record in words, after its time on the game's clock (seconds since the game started).
+     */
+    static String describe(GameJournal.Record record) {
+        String time = String.format("%10.3f ", record.time / (double) TimeUnit.SECONDS.toNanos(1));
+        switch (record.type) {
+            case START:
+                return time + "game starts: " + record.a + " players, " + record.b + " slots, " + record.c + " cards a SET";
+            case DEAL:
+                return time + "card " + record.b + " dealt to slot " + record.a;
+            case REMOVE:
+                return time + "card " + record.b + " removed from slot " + record.a;
+            case TOKEN:
+                return time + "player " + (record.a + 1) + " places a token on slot " + record.b;
+            case UNTOKEN:
+                return time + "player " + (record.a + 1) + " removes his token from slot " + record.b;
+            case CLEAR:
+                return time + (record.a == -1 ? "all tokens removed" : "tokens removed from slot " + record.a);
+            case CLAIM:
+            case CLAIM_MORE:
+                return time + "player " + (record.a + 1) + (record.type == GameJournal.Type.CLAIM ? " claims slots" : "   ... and slots")
+                        + slots(record);
+            case VERDICT:
+                return time + "player " + (record.a + 1) + "'s claim is "
+                        + (record.b == GameJournal.LEGAL ? "legal" : record.b == GameJournal.ILLEGAL ? "illegal" : "not complete");
+            case SCORE:
+                return time + "player " + (record.a + 1) + " scores " + record.b;
+            case RESHUFFLE:
+                return time + "reshuffle " + record.a;
+            case WINNER:
+                return time + "player " + (record.a + 1) + " wins with " + record.b;
+            default:
+                return time + record;
+        }
+    }
+
+    private static String slots(GameJournal.Record record) {
+        StringBuilder slots = new StringBuilder();
+        for (int slot : new int[]{record.b, record.c, record.d})
+            if (slot != -1)
+                slots.append(' ').append(slot);
+        return slots.toString();
+    }
+}
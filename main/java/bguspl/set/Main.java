@@ -57,7 +57,10 @@ public class Main {
             }
             ui = new UserInterfaceDecorator(logger, util, ui);
 
-            Env env = new Env(logger, config, ui, util);
+            boolean virtualThreads = config.virtualThreads && VirtualThreads.supported();
+            Env env = virtualThreads ?
+                    new Env(logger, config, ui, util, new SystemClock(), VirtualThreads.newExecutor()) :
+                    new Env(logger, config, ui, util);
 
             // create the game entities
             Table table = new Table(env);
@@ -65,13 +68,18 @@ public class Main {
             for (int i = 0; i < players.length; i++)
                 players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
 
-            // start the dealer thread
-            ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
-            dealerThread.startWithLog();
+            // start the dealer thread (on env.executor, like the players)
+            GameTask dealerThread = new GameTask(dealer, "dealer");
+            ThreadLogger.logStart(logger, dealerThread.getName());
+            dealerThread.start(env.executor);
 
             try {
                 // shutdown stuff
-                dealerThread.joinWithLog();
+                try {
+                    dealerThread.join();
+                } finally {
+                    ThreadLogger.logStop(logger, dealerThread.getName());
+                }
                 if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
             } catch (InterruptedException ignored) {
             } finally {
@@ -0,0 +1,203 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs games back to back with computer players only and no user interface, as fast as the configuration allows,
+ * and reports their statistics (for AI tuning and capacity planning).
+ * Usage: java bguspl.set.Simulation [games] [config file] [virtual|real]
+ *
+ * On virtual time (the default) the game keeps its configured timeouts, freezes and delays, and they cost no real
+ * time (see VirtualClock). Computer players must wait between key presses for time to pass, so ComputerKeyDelaySeconds
+ * defaults to 0.1 there. On real time the delays and freezes are turned off instead.
+ *
+ * Each game reports its seed. Running a single game with that RandomSeed and an InputLogFile records it, and running it
+ * with the ReplayFile plays the same game again on the same configuration (on virtual time, as fast as it can run).
+ */
+public class Simulation {
+
+    /**
+     * The statistics of a single game.
+     */
+    static class GameStats {
+        long durationNanos;
+        long gameTimeNanos;
+        long cpuNanos;
+        long seed;
+        int legalSets;
+        int illegalSets;
+        int reshuffles;
+        int claims;
+        long verdictNanos;
+        long maxVerdictNanos;
+        int[] scores;
+
+        @Override
+        public String toString() {
+            return String.format("%d ms (game time %d ms, cpu %d ms), seed %d, %d sets, %d illegal claims, %d reshuffles, scores %s",
+                    TimeUnit.NANOSECONDS.toMillis(durationNanos), TimeUnit.NANOSECONDS.toMillis(gameTimeNanos),
+                    TimeUnit.NANOSECONDS.toMillis(cpuNanos), seed,
+                    legalSets, illegalSets, reshuffles, Arrays.toString(scores));
+        }
+    }
+
+    /**
+     * Discards everything written to it.
+     */
+    static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    };
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        String configFilename = args.length > 1 ? args[1] : "config.properties";
+        boolean virtualTime = args.length <= 2 || !args[2].equals("real");
+
+        Logger logger = Logger.getLogger("SetSimulationLogger");
+        logger.setUseParentHandlers(false);
+        Properties properties = Config.loadProperties(configFilename, logger);
+        headless(properties, virtualTime);
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        Executor executor = config.virtualThreads && VirtualThreads.supported() ?
+                VirtualThreads.newExecutor() : task -> new Thread(task).start();
+
+        // the game classes print their progress to the console, which would swamp the report
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(NULL_OUTPUT));
+
+        GameStats[] stats = new GameStats[games];
+        long start = System.nanoTime();
+        try {
+            for (int game = 0; game < games; ++game) {
+                Clock clock = virtualTime ? new VirtualClock() : new SystemClock();
+                stats[game] = runGame(logger, config, util, clock, executor, "dealer-" + game);
+                out.println("game " + (game + 1) + ": " + stats[game]);
+            }
+        } finally {
+            System.setOut(out);
+        }
+        report(out, stats, System.nanoTime() - start);
+    }
+
+    /**
+     * Overrides the settings that only matter to someone watching the game: human players, logging and (on real
+     * time) delays.
+     *
+     * @param properties  - the game configuration properties.
+     * @param virtualTime - true iff the games run on virtual time, where delays cost nothing.
+     */
+    static void headless(Properties properties, boolean virtualTime) {
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("Hints", "false");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        properties.setProperty("LogLevel", "OFF");
+        if (virtualTime) {
+            if (Double.parseDouble(properties.getProperty("ComputerKeyDelaySeconds", "0")) <= 0)
+                properties.setProperty("ComputerKeyDelaySeconds", "0.1");
+        } else {
+            properties.setProperty("TableDelaySeconds", "0");
+            properties.setProperty("PointFreezeSeconds", "0");
+            properties.setProperty("PenaltyFreezeSeconds", "0");
+        }
+    }
+
+    /**
+     * Runs a single game to its end.
+     *
+     * @param executor - runs the game's threads.
+     * @param name     - the name of the dealer thread.
+     * @return - the statistics of the game.
+     */
+    static GameStats runGame(Logger logger, Config config, Util util, Clock clock, Executor executor, String name) throws InterruptedException {
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), util, clock, executor);
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        long start = System.nanoTime();
+        long gameStart = clock.nanoTime();
+        long cpuStart = processCpuNanos();
+        GameTask dealerThread = new GameTask(dealer, name);
+        dealerThread.start(executor);
+        dealerThread.join();
+        GameStats stats = stats(dealer, players, System.nanoTime() - start, clock.nanoTime() - gameStart);
+        stats.cpuNanos = processCpuNanos() - cpuStart; // the games run one at a time, so the process' CPU time is the game's
+        stats.seed = env.seed;
+        return stats;
+    }
+
+    /**
+     * @return - the CPU time used by the JVM so far in nanoseconds, 0 if the JVM doesn't report it.
+     */
+    static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof com.sun.management.OperatingSystemMXBean ?
+                Math.max(0, ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime()) : 0;
+    }
+
+    /**
+     * @param durationNanos - the real time the game took.
+     * @param gameTimeNanos - the game time (on the game's clock) the game took.
+     * @return - the statistics of a game that has ended.
+     */
+    static GameStats stats(Dealer dealer, Player[] players, long durationNanos, long gameTimeNanos) {
+        GameStats stats = new GameStats();
+        stats.durationNanos = durationNanos;
+        stats.gameTimeNanos = gameTimeNanos;
+        stats.legalSets = dealer.legalSets();
+        stats.illegalSets = dealer.illegalSets();
+        stats.reshuffles = dealer.reshuffles();
+        stats.claims = dealer.claimsChecked();
+        stats.verdictNanos = dealer.verdictNanos();
+        stats.maxVerdictNanos = dealer.maxVerdictNanos();
+        stats.scores = Arrays.stream(players).mapToInt(Player::score).toArray();
+        return stats;
+    }
+
+    /**
+     * Prints the throughput and the per game averages of all games.
+     */
+    static void report(PrintStream out, GameStats[] stats, long elapsedNanos) {
+        if (stats.length == 0) return;
+        double seconds = elapsedNanos / 1e9;
+        long sets = Arrays.stream(stats).mapToLong(s -> s.legalSets).sum();
+        long illegal = Arrays.stream(stats).mapToLong(s -> s.illegalSets).sum();
+        long reshuffles = Arrays.stream(stats).mapToLong(s -> s.reshuffles).sum();
+        long minMillis = TimeUnit.NANOSECONDS.toMillis(Arrays.stream(stats).mapToLong(s -> s.durationNanos).min().getAsLong());
+        long maxMillis = TimeUnit.NANOSECONDS.toMillis(Arrays.stream(stats).mapToLong(s -> s.durationNanos).max().getAsLong());
+        double avgMillis = Arrays.stream(stats).mapToLong(s -> s.durationNanos).average().getAsDouble() / 1e6;
+        long claims = Arrays.stream(stats).mapToLong(s -> s.claims).sum();
+        long verdictNanos = Arrays.stream(stats).mapToLong(s -> s.verdictNanos).sum();
+        long maxVerdictNanos = Arrays.stream(stats).mapToLong(s -> s.maxVerdictNanos).max().getAsLong();
+        long cpuNanos = Arrays.stream(stats).mapToLong(s -> s.cpuNanos).sum();
+        long durationNanos = Arrays.stream(stats).mapToLong(s -> s.durationNanos).sum();
+
+        out.printf("%d games in %.2f s: %.2f games/sec, %.2f sets/sec%n", stats.length, seconds, stats.length / seconds, sets / seconds);
+        out.printf("per game: %.1f ms (min %d, max %d), %.2f sets, %.2f illegal claims, %.2f reshuffles%n",
+                avgMillis, minMillis, maxMillis, (double) sets / stats.length, (double) illegal / stats.length, (double) reshuffles / stats.length);
+        out.printf("claims: %.2f claims/sec, verdict latency %.1f us (max %.1f us)%n",
+                claims / seconds, claims == 0 ? 0.0 : verdictNanos / 1e3 / claims, maxVerdictNanos / 1e3);
+        if (cpuNanos > 0)
+            out.printf("cpu: %.1f ms per game (%.0f%% of a core while playing)%n",
+                    cpuNanos / 1e6 / stats.length, 100.0 * cpuNanos / durationNanos);
+    }
+}
@@ -0,0 +1,26 @@
+package bguspl.set;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock running on real (monotonic) time.
+ */
+public class SystemClock implements Clock {
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @Override
+    public void waitUntil(Object monitor, long deadline) throws InterruptedException {
+        long timeout = deadline - System.nanoTime();
+        if (timeout > 0)
+            TimeUnit.NANOSECONDS.timedWait(monitor, timeout);
+    }
+}
@@ -18,6 +18,27 @@ public interface UserInterface {
      */
     void removeCard(int slot);
 
+    /**
+     * Draw the card images corresponding to the card ids in the specified slots, as a single update.
+     * An implementation may draw them one after the other (e.g. animated) after returning.
+     * @param cards - the card ids.
+     * @param slots - the slot numbers, slots[i] for cards[i] (for grid; slot = row*row.length + column).
+     */
+    default void placeCards(int[] cards, int[] slots) {
+        for (int i = 0; i < cards.length; ++i)
+            placeCard(cards[i], slots[i]);
+    }
+
+    /**
+     * Draw an empty card image in each of the specified slots, as a single update.
+     * An implementation may draw them one after the other (e.g. animated) after returning.
+     * @param slots - the slot numbers (for grid; slot = row*row.length + column).
+     */
+    default void removeCards(int[] slots) {
+        for (int slot : slots)
+            removeCard(slot);
+    }
+
     /**
      * Draw a player name text in the specified slot.
      * @param player - the card id.
@@ -6,8 +6,10 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.FileNotFoundException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -108,6 +110,10 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private final boolean[][][] playerTokens;
         private final JLabel[][] tokenText;
 
+        // the card changes of batched updates still to be drawn, one every tableDelayMillis (on the event dispatch thread)
+        private final Queue<Runnable> cardChanges = new ArrayDeque<>();
+        private final Timer cardTimer;
+
         private Image loadImageResource(String filename) {
             URL imageResource = getClass().getClassLoader().getResource(filename);
             if (imageResource == null)
@@ -146,6 +152,42 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                     add(tokenText[row][column]);
                 }
             }
+
+            cardTimer = new Timer((int) Math.max(1, config.tableDelayMillis), e -> {
+                Runnable change = cardChanges.poll();
+                if (change != null) change.run();
+                if (cardChanges.isEmpty()) ((Timer) e.getSource()).stop();
+            });
+            cardTimer.setInitialDelay(0);
+        }
+
+        private void animate(Runnable[] changes) {
+            EventQueue.invokeLater(() -> {
+                if (config.tableDelayMillis <= 0 && cardChanges.isEmpty()) {
+                    for (Runnable change : changes) change.run();
+                    return;
+                }
+                cardChanges.addAll(Arrays.asList(changes));
+                if (!cardTimer.isRunning()) cardTimer.start();
+            });
+        }
+
+        private void placeCards(int[] cards, int[] slots) {
+            Runnable[] changes = new Runnable[cards.length];
+            for (int i = 0; i < cards.length; i++) {
+                int card = cards[i], slot = slots[i];
+                changes[i] = () -> placeCard(slot, card);
+            }
+            animate(changes);
+        }
+
+        private void removeCards(int[] slots) {
+            Runnable[] changes = new Runnable[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                int slot = slots[i];
+                changes[i] = () -> removeCard(slot);
+            }
+            animate(changes);
         }
 
         private void placeCard(int slot, int card) {
@@ -284,6 +326,16 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         gamePanel.removeCard(slot);
     }
 
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        gamePanel.placeCards(cards, slots);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        gamePanel.removeCards(slots);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
         gamePanel.placeToken(player, slot);
@@ -40,6 +40,14 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds the card that completes the given cards to a legal set.
+     *
+     * @param cards - an array of config.featureSize - 1 card ids.
+     * @return - the id of the completing card, or -1 if there is no such card.
+     */
+    int completeSet(int[] cards);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -4,7 +4,6 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.IntStream;
 
 /**
  * The implementation of the UserInterface interface.
@@ -13,8 +12,42 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The features of every card (see cardToFeatures), computed once.
+     */
+    private final int[][] features;
+
+    /**
+     * The packed features of every card: feature i with value v sets bit (i * featureSize + v), so OR-ing the codes
+     * of a set leaves exactly 1 (sameSame) or featureSize (butDifferent) bits in every feature's field.
+     * Null if the fields do not fit in a long.
+     */
+    private final long[] packed;
+
+    /**
+     * The lowest bit of every feature's field in a packed code.
+     */
+    private final long fieldsLowBits;
+
     public UtilImpl(Config config) {
         this.config = config;
+        scratch = ThreadLocal.withInitial(() -> new Scratch(config.deckSize, config.featureSize));
+
+        features = new int[config.deckSize][config.featureCount];
+        for (int card = 0; card < config.deckSize; ++card)
+            cardToFeatures(card, features[card]);
+
+        if (config.featureCount * config.featureSize <= Long.SIZE) {
+            packed = new long[config.deckSize];
+            for (int card = 0; card < config.deckSize; ++card)
+                for (int i = 0; i < config.featureCount; ++i)
+                    packed[card] |= 1L << (i * config.featureSize + features[card][i]);
+        } else packed = null;
+
+        long lowBits = 0;
+        for (int i = 0; i < config.featureCount; ++i)
+            lowBits |= 1L << (i * config.featureSize);
+        fieldsLowBits = lowBits;
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -26,21 +59,46 @@ public class UtilImpl implements Util {
 
     @Override
     public int[] cardToFeatures(int card) {
-        int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
-        return features;
+        return features[card].clone();
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
-        int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        int[][] features = new int[cards.length][];
+        for (int i = 0; i < cards.length; ++i)
+            features[i] = this.features[cards[i]].clone();
         return features;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
+        if (packed == null || cards.length != config.featureSize)
+            return testSetByFeatures(cards);
+
+        long code = 0;
+        for (int card : cards)
+            code |= packed[card];
+
+        if (config.featureSize == 3) {
+            // a feature is illegal iff exactly 2 of its 3 bits are set
+            long bit0 = code & fieldsLowBits, bit1 = (code >>> 1) & fieldsLowBits, bit2 = (code >>> 2) & fieldsLowBits;
+            long atLeastTwo = (bit0 & bit1) | (bit0 & bit2) | (bit1 & bit2);
+            return (atLeastTwo & ~(bit0 & bit1 & bit2)) == 0;
+        }
+
+        long field = (1L << config.featureSize) - 1;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int values = Long.bitCount((code >>> (i * config.featureSize)) & field);
+            if (values != 1 && values != config.featureSize) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks the set feature by feature (used when the packed codes do not apply).
+     */
+    private boolean testSetByFeatures(int[] cards) {
+        int[][] features = cardsToFeatures(cards);
         for (int i = 0; i < config.featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
 
@@ -64,8 +122,116 @@ public class UtilImpl implements Util {
         return true;
     }
 
+    /**
+     * Computes the card that completes the first (config.featureSize - 1) given cards to a legal set: for every
+     * feature, if the cards agree the missing card agrees as well, and if they are all different it takes the only
+     * value left.
+     *
+     * @param cards  - the card ids (only the first length entries are used).
+     * @param length - the number of cards to complete (config.featureSize - 1).
+     * @return - the id of the completing card, or -1 if no card completes them to a legal set.
+     */
+    private int completeSet(int[] cards, int length) {
+        int card = 0;
+        int all = (1 << config.featureSize) - 1;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int seen = 0, distinct = 0, value = 0;
+            for (int j = 0; j < length; ++j) {
+                value = features[cards[j]][i];
+                if ((seen & (1 << value)) == 0) {
+                    seen |= 1 << value;
+                    ++distinct;
+                }
+            }
+            if (distinct == length && length > 1) // butDifferent - take the one value nobody has
+                value = Integer.numberOfTrailingZeros(all & ~seen);
+            else if (distinct != 1) // neither sameSame nor butDifferent
+                return -1;
+            card = card * config.featureSize + value;
+        }
+        return card;
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        if (cards.length != config.featureSize - 1 || cards.length < 2) return -1;
+        return completeSet(cards, cards.length);
+    }
+
+    /**
+     * Scratch buffers of findSets, kept per thread so the search itself does not allocate.
+     */
+    private static class Scratch {
+        final int[] cards;
+        final int[] combination;
+        final int[] chosen;
+        final int[] stamps;
+        int stamp = 0;
+
+        Scratch(int deckSize, int setSize) {
+            cards = new int[deckSize];
+            combination = new int[setSize];
+            chosen = new int[setSize];
+            stamps = new int[deckSize];
+        }
+    }
+
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * Instead of testing every r-combination of the deck, picks every (r - 1)-combination and looks up the single
+     * card that completes it in a presence index. For the default 3 features per set this is O(n^2) instead of O(n^3).
+     */
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
+        LinkedList<int[]> sets = new LinkedList<>();
+        int n = deck.size();
+        int r = config.featureSize - 1; // the last card of each set is completed rather than searched for
+        if (r < 2) return findSetsExhaustive(deck, count); // a single card does not determine its completion
+        if (n <= r || count <= 0) return sets;
+
+        Scratch s = scratch.get();
+        if (++s.stamp == 0) { // the stamps wrapped around, start over
+            Arrays.fill(s.stamps, 0);
+            s.stamp = 1;
+        }
+        // presence index (stamps[card] == stamp iff card is in the deck) and the deck sorted by card id, so each set
+        // is generated exactly once - by its r smallest cards
+        for (int i = 0; i < n; ++i) {
+            int card = deck.get(i);
+            s.cards[i] = card;
+            s.stamps[card] = s.stamp;
+        }
+        Arrays.sort(s.cards, 0, n);
+
+        int[] combination = s.combination;
+        for (int i = 0; i < r; ++i)
+            combination[i] = i;
+
+        while (combination[r - 1] < n) {
+            for (int i = 0; i < r; ++i)
+                s.chosen[i] = s.cards[combination[i]];
+            int last = completeSet(s.chosen, r);
+            if (last > s.chosen[r - 1] && s.stamps[last] == s.stamp) {
+                int[] cards = Arrays.copyOf(s.chosen, r + 1);
+                cards[r] = last;
+                sets.add(cards);
+                if (sets.size() >= count) return sets;
+            }
+
+            // generate next combination in lexicographic order
+            int t = r - 1;
+            while (t != 0 && combination[t] == n - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return sets;
+    }
+
+    /**
+     * Tests every r-combination of the deck (used when sets are too small for completion lookup).
+     */
+    private List<int[]> findSetsExhaustive(List<Integer> deck, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
         int n = deck.size();
         int r = config.featureSize;
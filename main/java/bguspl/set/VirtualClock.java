@@ -0,0 +1,240 @@
+package bguspl.set;
+
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A discrete event clock: time stands still until the driving thread (the dealer) runs out of work and waits, and
+ * then jumps straight to the next scheduled event - the end of the driver's wait or of another thread's sleep,
+ * whichever comes first. A game with long timeouts and freezes runs as fast as its threads can act, and its timing
+ * doesn't depend on the machine's load.
+ *
+ * Threads other than the driver only wait in sleep. When the clock wakes some of them up, the driver lets them act
+ * (e.g. press a key and claim a SET) before moving the clock on, until they sleep, block or end; and it doesn't move
+ * the clock on while the game says it is busy (e.g. a player has key-presses to handle), so what happens at a time is
+ * done before the next one - the same input plays the same game. The driver waits for that as long as it takes in real
+ * time, however loaded the machine is.
+ * Threads that never sleep on the clock (e.g. busy ones), and woken up threads that stay runnable (e.g. spin or wait
+ * for I/O), never let time pass.
+ */
+public class VirtualClock implements Clock {
+
+    /**
+     * How often (in real time) the driver checks again whether the woken up threads have settled and the game isn't
+     * busy, since threads that block or end don't tell the clock.
+     */
+    private static final long SETTLE_POLL_MILLIS = 10;
+
+    /**
+     * A thread sleeping on the clock, ordered by wake up time.
+     */
+    private static class Sleeper implements Comparable<Sleeper> {
+        final long wakeUp;
+        final Thread thread;
+
+        Sleeper(long wakeUp, Thread thread) {
+            this.wakeUp = wakeUp;
+            this.thread = thread;
+        }
+
+        @Override
+        public int compareTo(Sleeper other) {
+            return Long.compare(wakeUp, other.wakeUp);
+        }
+    }
+
+    /**
+     * Guards the clock's state (a Lock rather than a monitor, so virtual threads sleeping on the clock don't pin their
+     * carrier threads).
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled (under lock) when the clock moves forward.
+     */
+    private final Condition advanced = lock.newCondition();
+
+    /**
+     * The current time (written under lock).
+     */
+    private volatile long now = 0;
+
+    /**
+     * The thread whose waits move the clock forward.
+     */
+    private volatile Thread driver;
+
+    /**
+     * The monitor the driver waits on (notified when the woken up threads have settled).
+     */
+    private volatile Object driverMonitor;
+
+    /**
+     * True while the game has work to do at the current time (never, until a driver says otherwise).
+     */
+    private volatile BooleanSupplier busy = () -> false;
+
+    /**
+     * The threads sleeping on the clock.
+     */
+    private final PriorityQueue<Sleeper> sleepers = new PriorityQueue<>();
+
+    /**
+     * The threads woken up by the clock that haven't slept again yet.
+     */
+    private final Set<Thread> woken = new HashSet<>();
+
+    /**
+     * The woken up threads that have already returned from sleep.
+     */
+    private final Set<Thread> returned = new HashSet<>();
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public void drive(BooleanSupplier busy) {
+        this.busy = busy;
+        driver = Thread.currentThread();
+    }
+
+    @Override
+    public void idle() {
+        notifyDriver();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        sleepUntil(now + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Override
+    public void sleepUntil(long wakeUp) throws InterruptedException {
+        if (Thread.currentThread() == driver) { // the driver is busy until then, nothing else happens meanwhile
+            Object monitor = driverMonitor;
+            if (monitor != null) { // but what happens now is done first
+                synchronized (monitor) {
+                    settle(monitor);
+                }
+            }
+            advanceTo(wakeUp);
+            return;
+        }
+
+        Sleeper sleeper = new Sleeper(wakeUp, Thread.currentThread());
+        boolean settled;
+        lock.lock();
+        try {
+            returned.remove(sleeper.thread);
+            settled = woken.remove(sleeper.thread) && woken.isEmpty();
+            sleepers.add(sleeper);
+        } finally {
+            lock.unlock();
+        }
+        if (settled)
+            notifyDriver();
+
+        lock.lock();
+        try {
+            while (now < wakeUp)
+                advanced.await();
+        } finally {
+            if (!sleepers.remove(sleeper)) // woken up by the clock rather than interrupted
+                returned.add(sleeper.thread);
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void waitUntil(Object monitor, long deadline) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        driverMonitor = monitor;
+
+        // the game may still have work at the current time: let it finish, and if it had, let the caller re-check its
+        // condition (e.g. a SET was claimed meanwhile) before time moves on
+        if (settle(monitor))
+            return;
+
+        long time;
+        lock.lock();
+        try {
+            Sleeper next = sleepers.peek();
+            time = next != null && next.wakeUp < deadline ? next.wakeUp : deadline;
+        } finally {
+            lock.unlock();
+        }
+        advanceTo(time);
+
+        // let the threads that woke up act before time moves on, they may notify the monitor (e.g. claim a SET)
+        settle(monitor);
+    }
+
+    /**
+     * Waits on the monitor until the woken up threads have settled and the game isn't busy (with no real time limit).
+     *
+     * @param monitor - the driver's monitor, held by the caller.
+     * @return - true iff it had to wait.
+     * @throws InterruptedException - if the driver was interrupted while waiting.
+     */
+    private boolean settle(Object monitor) throws InterruptedException {
+        boolean waited = false;
+        while (!settled() || busy.getAsBoolean()) {
+            TimeUnit.MILLISECONDS.timedWait(monitor, SETTLE_POLL_MILLIS);
+            waited = true;
+        }
+        return waited;
+    }
+
+    /**
+     * Moves the clock forward and wakes up the threads whose sleep has ended.
+     *
+     * @param time - the new time (ignored if in the past).
+     */
+    public void advanceTo(long time) {
+        lock.lock();
+        try {
+            if (time > now)
+                now = time;
+            while (!sleepers.isEmpty() && sleepers.peek().wakeUp <= now)
+                woken.add(sleepers.poll().thread);
+            advanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return - true iff every thread the clock woke up has slept, blocked or ended since (a thread blocked on the
+     * clock's own lock is on its way to sleep, and hasn't said when it wakes up yet).
+     */
+    private boolean settled() {
+        lock.lock();
+        try {
+            woken.removeIf(thread -> returned.contains(thread) && thread.getState() != Thread.State.RUNNABLE
+                    && !lock.hasQueuedThread(thread) && returned.remove(thread));
+            return woken.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tells the driver the woken up threads have settled.
+     */
+    private void notifyDriver() {
+        Object monitor = driverMonitor;
+        if (monitor != null) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package bguspl.set;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the game's threads as virtual threads (Java 21 and on). The API is looked up by reflection, so the same Java 8
+ * build runs on both; on an older JVM the setting is ignored (see Config). This path has only been run through its
+ * fallback so far, not on a Java 21 JVM.
+ *
+ * Virtual threads are cheap to block, so a game (or many games) may have tens of thousands of players. The players
+ * wait on Locks, Conditions and park rather than on monitors, since a virtual thread waiting inside synchronized pins
+ * the platform thread carrying it.
+ */
+public class VirtualThreads {
+
+    private VirtualThreads() {}
+
+    /**
+     * @return - true iff the running JVM has virtual threads.
+     */
+    public static boolean supported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return - an executor starting a new virtual thread per task.
+     * @throws UnsupportedOperationException - if the running JVM has no virtual threads.
+     */
+    public static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or later, running on " +
+                    System.getProperty("java.version"), e);
+        }
+    }
+}
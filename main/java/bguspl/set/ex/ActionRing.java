@@ -0,0 +1,129 @@
+package bguspl.set.ex;
+
+/**
+ * This class holds a player's key-presses, from the thread pressing the keys (a single producer: the keyboard or the
+ * player's AI) to the player thread (a single consumer). The presses are kept in a primitive ring, each with the table's
+ * dealing epoch it was made in, so nothing is boxed or locked on the way.
+ * When the ring is full a press is dropped and counted. Pressing the same slot twice in a row toggles its token twice,
+ * so the consumer drops such a pair (coalescing) instead of handling it.
+ *
+ * @inv 0 <= size() <= capacity()
+ */
+public class ActionRing {
+
+    /**
+     * The presses, the ones waiting are [head, tail) (mod the length), each packed as (epoch << 32 | slot).
+     */
+    private final long[] entries;
+
+    /**
+     * entries.length - 1 (the length is a power of 2).
+     */
+    private final int mask;
+
+    /**
+     * The number of presses taken so far (written by the consumer only).
+     */
+    private volatile long head;
+
+    /**
+     * The number of presses added so far (written by the producer only).
+     */
+    private volatile long tail;
+
+    /**
+     * The number of presses dropped because the ring was full (written by the producer only).
+     */
+    private volatile long dropped;
+
+    /**
+     * @param capacity - the least number of presses the ring should hold (rounded up to a power of 2).
+     */
+    public ActionRing(int capacity) {
+        int length = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        entries = new long[length];
+        mask = length - 1;
+    }
+
+    /**
+     * Adds a press (called by the producer only).
+     *
+     * @param slot  - the slot pressed.
+     * @param epoch - the table's dealing epoch when it was pressed.
+     * @return - the number of presses that were waiting before this one, as the consumer left them after it was
+     * published (0 - the consumer may be waiting for it), or -1 if the ring was full and the press was dropped.
+     */
+    public int offer(int slot, int epoch) {
+        long t = tail;
+        if (t - head == entries.length) {
+            dropped = dropped + 1;
+            return -1;
+        }
+        entries[(int) t & mask] = (long) epoch << 32 | (slot & 0xFFFFFFFFL);
+        tail = t + 1; // publishes the entry
+        // head read again after publishing: a consumer that drained meanwhile and found the ring empty (before the entry
+        // was published) is seen here, so the caller wakes it up
+        return (int) (t - head);
+    }
+
+    /**
+     * Takes all the presses waiting (called by the consumer only). Presses of another epoch are dropped, and so are
+     * pairs of presses in a row on the same slot.
+     *
+     * @param slots - the array to put the slots pressed in, of at least capacity() length.
+     * @param epoch - the table's current dealing epoch.
+     * @return - the number of slots put in slots.
+     */
+    public int drainTo(int[] slots, int epoch) {
+        long h = head, t = tail;
+        int count = 0;
+        for (; h < t; ++h) {
+            long entry = entries[(int) h & mask];
+            if ((int) (entry >>> 32) != epoch)
+                continue;
+            int slot = (int) entry;
+            if (count > 0 && slots[count - 1] == slot)
+                --count; // toggled twice
+            else
+                slots[count++] = slot;
+        }
+        head = t;
+        return count;
+    }
+
+    /**
+     * Drops all the presses waiting (called by the consumer only).
+     */
+    public void clear() {
+        head = tail;
+    }
+
+    /**
+     * @return - true iff there are no presses waiting.
+     */
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * @return - the number of presses waiting.
+     */
+    public int size() {
+        long h = head; // before tail, so it isn't ahead of it
+        return (int) (tail - h);
+    }
+
+    /**
+     * @return - the number of presses the ring holds.
+     */
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * @return - the number of presses dropped so far because the ring was full.
+     */
+    public long dropped() {
+        return dropped;
+    }
+}
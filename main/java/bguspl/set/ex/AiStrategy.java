@@ -0,0 +1,249 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The way a computer player chooses his key-presses (see Player.setStrategy). A strategy is asked for one key at a time
+ * by the dealer's KeyScheduler thread, which decides when the player presses.
+ *
+ * Strategies read the table without locks: the cards on the slots, the epoch and the table's snapshot of its legal
+ * sets may change while they look. A press based on a stale view costs nothing - the player thread drops presses of an
+ * earlier epoch, and the dealer checks every claim against the table as it is.
+ */
+public interface AiStrategy {
+
+    /**
+     * Chooses the next key for a computer player to press (called by the dealer's KeyScheduler thread only).
+     *
+     * @param table  - the table.
+     * @param player - the player.
+     * @return - the slot to press, or -1 to press nothing now.
+     */
+    int nextKey(Table table, Player player);
+
+    /**
+     * @param env    - the environment object.
+     * @param random - the random number generator of the strategy.
+     * @return - a new strategy, as configured by ComputerStrategy: "random", "pair" or "perfect".
+     * @throws IllegalArgumentException - if the configured strategy is unknown.
+     */
+    static AiStrategy of(Env env, Random random) {
+        switch (env.config.computerStrategy) {
+            case "random":
+                return new RandomKeys(random);
+            case "pair":
+                return new CompletePair(env, random);
+            case "perfect":
+                return new Perfect(env, random, env.config.computerPerfectDelayMillis);
+            default:
+                throw new IllegalArgumentException("unknown computer strategy " + env.config.computerStrategy);
+        }
+    }
+
+    /**
+     * Presses a random slot with a card on it (almost every claim is illegal).
+     */
+    class RandomKeys implements AiStrategy {
+
+        private final Random random;
+
+        public RandomKeys(Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public int nextKey(Table table, Player player) {
+            int slots = table.slotToCard.length;
+            if (table.emptySlots.size() == slots)
+                return -1; // no cards to press
+            int slot = random.nextInt(slots);
+            // table.emptySlots = {0,1,2}, slot = 1, table.emptySlots.contains(slot) - draw another slot
+            for (int tries = 1; table.emptySlots.contains(slot) && tries < slots; ++tries)
+                slot = random.nextInt(slots);
+            return slot;
+        }
+    }
+
+    /**
+     * Aims at a chosen set of slots: takes the player's tokens off other slots, then puts them on the chosen ones, a key
+     * at a time (after the player thread has handled the previous one, as the tokens show).
+     * A new set is chosen when the table is dealt, when a chosen card leaves the table, and when the player's claim on
+     * the chosen set got its verdict (he can press again while all of them hold his tokens).
+     */
+    abstract class Targeted implements AiStrategy {
+
+        protected final Env env;
+        protected final Random random;
+
+        /**
+         * The time between choosing a set and pressing its first key.
+         */
+        private final long delayNanos;
+
+        /**
+         * The slots chosen and the cards on them when chosen (valid iff chosen), and the epoch of the table then.
+         */
+        protected final int[] target;
+        private final int[] targetCards;
+        private boolean chosen;
+        private int epoch;
+
+        /**
+         * The time (env.clock.nanoTime()) the player may start pressing the chosen set.
+         */
+        private long startTime;
+
+        /**
+         * @param delayMillis - the time between choosing a set and pressing its first key.
+         */
+        protected Targeted(Env env, Random random, long delayMillis) {
+            this.env = env;
+            this.random = random;
+            delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            target = new int[env.config.featureSize];
+            targetCards = new int[env.config.featureSize];
+        }
+
+        /**
+         * Chooses the slots to aim at.
+         *
+         * @param table - the table.
+         * @return - true iff slots were chosen (put in target), false if there is nothing to aim at.
+         */
+        protected abstract boolean choose(Table table);
+
+        @Override
+        public int nextKey(Table table, Player player) {
+            if (!player.keysHandled())
+                return -1; // the tokens don't show the previous key yet
+            int current = table.epoch();
+            if (!chosen || epoch != current || moved(table) || claimed(table, player.id)) {
+                chosen = choose(table);
+                if (!chosen)
+                    return -1;
+                epoch = current;
+                for (int i = 0; i < target.length; ++i)
+                    targetCards[i] = table.slotToCard[target[i]];
+                startTime = env.clock.nanoTime() + delayNanos;
+            }
+            if (env.clock.nanoTime() < startTime)
+                return -1;
+
+            for (int slot : table.tokens(player.id)) // tokens of an earlier aim
+                if (indexOf(target, slot) < 0)
+                    return slot;
+            for (int slot : target)
+                if (!table.hasToken(player.id, slot))
+                    return slot;
+            return -1;
+        }
+
+        /**
+         * @return - true iff a card chosen has left its slot since.
+         */
+        private boolean moved(Table table) {
+            for (int i = 0; i < target.length; ++i)
+                if (table.slotToCard[target[i]] != targetCards[i])
+                    return true;
+            return false;
+        }
+
+        /**
+         * @return - true iff the player has tokens on all the slots chosen.
+         */
+        private boolean claimed(Table table, int player) {
+            for (int slot : target)
+                if (!table.hasToken(player, slot))
+                    return false;
+            return true;
+        }
+
+        /**
+         * Puts the slots of the table that hold cards in slots, in random order.
+         *
+         * @return - the number of slots put in slots.
+         */
+        protected int shuffledCardSlots(Table table, int[] slots) {
+            int count = 0;
+            for (int slot = 0; slot < table.slotToCard.length; ++slot)
+                if (table.slotToCard[slot] != -1)
+                    slots[count++] = slot;
+            Deck.shuffle(slots, count, random);
+            return count;
+        }
+
+        static int indexOf(int[] array, int value) {
+            for (int i = 0; i < array.length; ++i)
+                if (array[i] == value)
+                    return i;
+            return -1;
+        }
+    }
+
+    /**
+     * Picks cards at random but the last one, and looks up the card completing them to a set: if it is on the table
+     * the claim is legal, if not a random card is claimed with them (a legal claim every few tries).
+     */
+    class CompletePair extends Targeted {
+
+        /**
+         * Scratch arrays: the slots with cards, and the cards to complete.
+         */
+        private final int[] slots;
+        private final int[] cards;
+
+        public CompletePair(Env env, Random random) {
+            super(env, random, 0);
+            slots = new int[env.config.tableSize];
+            cards = new int[env.config.featureSize - 1];
+        }
+
+        @Override
+        protected boolean choose(Table table) {
+            int count = shuffledCardSlots(table, slots);
+            if (count < target.length)
+                return false;
+            for (int i = 0; i < cards.length; ++i) {
+                target[i] = slots[i];
+                cards[i] = table.slotToCard[slots[i]];
+                if (cards[i] == -1)
+                    return false; // removed meanwhile
+            }
+            // the card completing the others is never one of them, so its slot isn't one picked already
+            int third = env.util.completeSet(cards);
+            int slot = third == -1 ? -1 : table.cardToSlot[third];
+            target[cards.length] = slot != -1 ? slot : slots[cards.length];
+            return true;
+        }
+    }
+
+    /**
+     * Claims only legal sets, from the table's own index of them, each after a delay (for how long a player looks).
+     */
+    class Perfect extends Targeted {
+
+        /**
+         * @param delayMillis - the time between finding a set and pressing its first key.
+         */
+        public Perfect(Env env, Random random, long delayMillis) {
+            super(env, random, delayMillis);
+        }
+
+        @Override
+        protected boolean choose(Table table) {
+            int[][] sets = table.setsOnTable.sets(); // an immutable snapshot
+            if (sets.length == 0)
+                return false;
+            int[] set = sets[random.nextInt(sets.length)];
+            for (int i = 0; i < target.length; ++i) {
+                target[i] = table.cardToSlot[set[i]];
+                if (target[i] == -1)
+                    return false; // removed meanwhile
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class is the channel of SET claims from the players (many producers) to the dealer (a single consumer).
+ * Offering is lock-free (a compare-and-set push on a stack), and the dealer takes all the pending claims at once
+ * (a single swap of the stack), in the order of their sequence numbers.
+ * Instead of being replaced by a new queue, the queue is reset by moving to a new epoch: claims of an older epoch that
+ * are still on their way in are dropped when drained.
+ *
+ * @inv size() >= 0
+ */
+public class ClaimQueue {
+
+    /**
+     * A SET claimed by a player.
+     */
+    public static class Claim {
+
+        /**
+         * The id of the player claiming.
+         */
+        public final int player;
+
+        /**
+         * The slots of the player's tokens when claiming, in increasing order.
+         */
+        public final int[] slots;
+
+        /**
+         * The order of the claim among all claims (increasing).
+         */
+        public final long seq;
+
+        /**
+         * The time (System.nanoTime()) of the claim, for measuring how long the verdict takes.
+         */
+        public final long nanoTime;
+
+        /**
+         * The time of the claim on the game's clock (see offer).
+         */
+        public final long time;
+
+        /**
+         * The epoch of the queue when claiming.
+         */
+        private final int epoch;
+
+        /**
+         * The claim below this one in the stack.
+         */
+        private Claim next;
+
+        private Claim(int player, int[] slots, long seq, int epoch, long time) {
+            this.player = player;
+            this.slots = slots;
+            this.seq = seq;
+            this.epoch = epoch;
+            this.time = time;
+            nanoTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Orders claims by arrival.
+     */
+    private static final Comparator<Claim> BY_SEQ = Comparator.comparingLong(claim -> claim.seq);
+
+    /**
+     * Orders claims by their time on the game's clock, and claims made at the same time (on a virtual clock) by player,
+     * so they are served alike whichever player thread was first.
+     */
+    public static final Comparator<Claim> BY_TIME = Comparator.<Claim>comparingLong(claim -> claim.time)
+            .thenComparingInt(claim -> claim.player);
+
+    /**
+     * The latest claim offered (the top of the stack), null if there are none pending.
+     */
+    private final AtomicReference<Claim> top = new AtomicReference<>();
+
+    /**
+     * The sequence number of the latest claim.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The number of claims pending, counted before they are pushed (so draining a claim whose offer hasn't returned yet
+     * never takes it below zero).
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * The current epoch, claims of older ones are dropped.
+     */
+    private volatile int epoch;
+
+    /**
+     * Adds a claim (called by any player thread, never blocks).
+     *
+     * @param player - the id of the player claiming.
+     * @param slots  - the slots of the player's tokens.
+     * @return - the sequence number of the claim.
+     */
+    public long offer(int player, int[] slots) {
+        return offer(player, slots, 0);
+    }
+
+    /**
+     * Adds a claim made at a time on the game's clock (called by any player thread, never blocks).
+     *
+     * @param player - the id of the player claiming.
+     * @param slots  - the slots of the player's tokens.
+     * @param time   - the time of the claim on the game's clock.
+     * @return - the sequence number of the claim.
+     */
+    public long offer(int player, int[] slots, long time) {
+        Claim claim = new Claim(player, slots, sequence.incrementAndGet(), epoch, time);
+        size.incrementAndGet();
+        Claim current;
+        do {
+            current = top.get();
+            claim.next = current;
+        } while (!top.compareAndSet(current, claim));
+        return claim.seq;
+    }
+
+    /**
+     * Takes all the pending claims of the current epoch (called by the dealer thread only).
+     *
+     * @param batch - the list to add the claims to, in increasing sequence number order.
+     * @return - the number of claims added.
+     */
+    public int drainTo(List<Claim> batch) {
+        Claim claim = top.getAndSet(null);
+        int from = batch.size();
+        int taken = 0;
+        for (; claim != null; claim = claim.next) {
+            ++taken;
+            if (claim.epoch == epoch)
+                batch.add(claim);
+        }
+        size.addAndGet(-taken);
+        List<Claim> added = batch.subList(from, batch.size());
+        added.sort(BY_SEQ); // the stack is newest first, and sequence numbers are taken just before pushing
+        return added.size();
+    }
+
+    /**
+     * Drops all pending claims, and those of players that are claiming right now (called by the dealer thread only).
+     */
+    public void reset() {
+        ++epoch; // only the dealer writes it
+        drainTo(new ArrayList<>());
+    }
+
+    /**
+     * @return - the number of claims pending.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return - true iff there are no claims pending.
+     */
+    public boolean isEmpty() {
+        return top.get() == null;
+    }
+
+    /**
+     * @param player - the id of a player.
+     * @return - true iff the player has a claim pending.
+     */
+    public boolean contains(int player) {
+        for (Claim claim = top.get(); claim != null; claim = claim.next)
+            if (claim.player == player)
+                return true;
+        return false;
+    }
+}
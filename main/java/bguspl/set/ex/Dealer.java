@@ -1,13 +1,19 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameJournal;
+import bguspl.set.GameTask;
+import bguspl.set.InputLog;
 
 
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -32,9 +38,9 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck.
      */
-    /*final*/ List<Integer> deck; // not final for tests
+    /*final*/ Deck deck; // not final for tests
 
     /**
      * True iff game should be terminated due to an external event.
@@ -42,15 +48,50 @@ public class Dealer implements Runnable {
     private volatile boolean terminate;
 
     /**
-     * The time when the dealer needs to reshuffle the deck due to turn timeout.
+     * The time (env.clock.nanoTime()) when the dealer needs to reshuffle the deck due to turn timeout.
      */
-    private long reshuffleTime = 0;
+    private long reshuffleTime = Long.MAX_VALUE;
 
     // added fields
     /**
      * Queue of player's who completed a SET, player's in queue are in order of completion
      */
-    public BlockingQueue<Integer> playersToCheck; // public for tests
+    public final ClaimQueue playersToCheck; // public for tests
+
+    /**
+     * The claims taken from playersToCheck for checking, reused by every checkSet()
+     */
+    private final List<ClaimQueue.Claim> claims;
+
+    /**
+     * The claims whose SETs are legal in the batch of claims being checked, and the slots of those SETs
+     */
+    private final ClaimQueue.Claim[] winningClaims;
+    private final int[] wonSlots;
+
+    /**
+     * For the i-th claim of the batch being checked: its slots (null if its tokens changed since it was made), the
+     * cards on them, and whether they are a legal SET
+     */
+    private int[][] claimSlots, claimCards;
+    private boolean[] claimLegal;
+
+    /**
+     * The freezes of the players, counted down and ended by the dealer thread
+     */
+    private final FreezeWheel freezes;
+
+    /**
+     * The threads testing the SETs of a batch of claims in parallel (null if the dealer tests them himself, the default:
+     * testSet is a few bit operations, and handing it to other threads was measured slower, 389 claims/sec with 2
+     * verifiers against 630 without, for 50 computer players on one CPU)
+     */
+    private ExecutorService verifiers;
+
+    /**
+     * slotWon[slot] is true iff the slot is part of a legal SET in the batch of claims being checked
+     */
+    private final boolean[] slotWon;
 
     /**
      * Dealer thread
@@ -58,24 +99,25 @@ public class Dealer implements Runnable {
     protected Thread dealerThread;
 
     /**
-     * The starting time of the game
+     * Random order of the indices of table for removing cards randomly in removeAllCardsFromTable() method
      */
-    protected long start_time;
+    protected final int[] randomRemovalOfCards;
 
     /**
-     * The current time all-along the simulation of the game
+     * An array of all player threads (run on env.executor). for gracefully finale
      */
-    protected long curr_time;
+    public GameTask[] playersThreads;
 
     /**
-     * Random list of indices of table for removing cards randomly in removeAllCardsFromTable() method
+     * Presses the keys of all the computer players, and its thread (null if all the players are human, or when replaying)
      */
-    protected List<Integer> randomRemovalOfCards;
+    private KeyScheduler computerKeys;
+    private volatile GameTask computerKeysThread;
 
     /**
-     * An array of all player threads. for gracefully finale
+     * Replays the key-presses of a recorded game (null if not replaying)
      */
-    public Thread[] playersThreads;
+    private InputReplay replay;
 
     /**
      * Indicator if after dealer.placeCardsOnTable() not all the slots on table are occupied with a card
@@ -88,9 +130,19 @@ public class Dealer implements Runnable {
     private final Object dealerLock;
  
     /**
-     * When placing cards back on table, each time dealer tells random player to wake all players
+     * Shuffles the deck and picks the empty slot for each card placed on table (seed it for reproducible runs)
+     */
+    private final Random random;
+
+    /**
+     * The game's random number generators (see Env.random) of the deck and of the computer players' key-presses
      */
-    private Random rand_player_to_wake;
+    private static final long RANDOM_STREAM = 0, KEYS_RANDOM_STREAM = 1;
+
+    /**
+     * Records every key pressed, for replaying the game (null if not recording)
+     */
+    volatile InputLog inputLog;
 
     /**
      * SET_SIZE as defined in config
@@ -98,30 +150,65 @@ public class Dealer implements Runnable {
     public final int SET_SIZE;
 
     /**
-     * Dealer wait time if there is no player inserting a SET to be checked
+     * True iff a player has queued a SET since the dealer last went to sleep (guarded by dealerLock)
+     */
+    private boolean claimPending;
+
+    /**
+     * The time (env.clock.nanoTime()) of the next countdown display refresh; the dealer sleeps until then unless a SET
+     * is claimed
+     */
+    private long nextRefreshTime;
+
+    /**
+     * The legal sets among the cards still in the game (deck and table), i.e. all cards but the ones of sets found
      */
-    public final int TIMEOUT = 50;
+    protected final SetIndex setsInGame;
 
+    /**
+     * Game statistics: the number of legal SETs found, illegal SETs claimed and reshuffles due to turn timeout
+     */
+    private volatile int legalSets, illegalSets, reshuffles;
+
+    /**
+     * Claim statistics: the number of claims given a verdict, and the total and largest time from claim to verdict
+     */
+    private volatile int claimsChecked;
+    private volatile long verdictNanos, maxVerdictNanos;
 
 
     public Dealer(Env env, Table table, Player[] players) {
+        this(env, table, players, env.random(RANDOM_STREAM));
+    }
+
+    /**
+     * @param random - the random number generator for the deck and the table, a seeded one makes the deals reproducible.
+     */
+    public Dealer(Env env, Table table, Player[] players, Random random) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        this.random = random;
+        deck = new Deck(env.config.deckSize, random);
 
         // added to CTR
-        playersToCheck = new ArrayBlockingQueue<Integer>(env.config.players);
-        start_time = env.config.turnTimeoutMillis;
-        curr_time = start_time;
-        randomRemovalOfCards = new ArrayList<>();
-        for (int i = 0; i < table.slotToCard.length; ++i)
-            randomRemovalOfCards.add(i);
-        playersThreads = new Thread[env.config.players];
+        playersToCheck = new ClaimQueue();
+        claims = new ArrayList<>(env.config.players);
+        freezes = new FreezeWheel(env.clock.nanoTime());
+        winningClaims = new ClaimQueue.Claim[env.config.players];
+        claimSlots = new int[env.config.players][];
+        claimCards = new int[env.config.players][];
+        claimLegal = new boolean[env.config.players];
+        wonSlots = new int[env.config.tableSize];
+        slotWon = new boolean[env.config.tableSize];
+        randomRemovalOfCards = IntStream.range(0, table.slotToCard.length).toArray();
+        playersThreads = new GameTask[env.config.players];
         tableHaveEmptySlots = false;
         dealerLock = new Object();
-        rand_player_to_wake = new Random();
         SET_SIZE = env.config.featureSize;
+        setsInGame = new SetIndex(env.util, env.config.featureSize, env.config.deckSize);
+        for (int card : deck.toArray())
+            setsInGame.add(card);
     }
 
     /**
@@ -130,33 +217,76 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         dealerThread = Thread.currentThread();
+        env.clock.drive(this::playersBusy);
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
 
         System.out.println("Starting in dealer.run()");
+        env.logger.log(Level.INFO, "Game seed " + env.seed + ".");
+        if (!env.config.inputLogFile.isEmpty()) {
+            try {
+                inputLog = new InputLog(env.config.inputLogFile, env.seed, env.clock);
+            } catch (IOException e) {
+                env.logger.severe("cannot record the key-presses in " + env.config.inputLogFile + ": " + e.getMessage());
+            }
+        }
+        if (!env.config.journalFile.isEmpty()) {
+            try {
+                GameJournal journal = new GameJournal(env.config.journalFile, env.seed, env.clock,
+                        env.config.journalSegmentBytes, env.config.journalFlushMillis);
+                journal.start(players.length, env.config.tableSize, env.config.featureSize);
+                table.journal = journal;
+            } catch (IOException e) {
+                env.logger.severe("cannot journal the game in " + env.config.journalFile + ": " + e.getMessage());
+            }
+        }
+        startVerifiers();
         // initializing players threads
         for (int i = 0; i < players.length; ++i) {
             if (!players[i].isHuman()) {
                 System.out.printf("player %s is AI",players[i].id);
                 System.out.println();
             }
-            Thread threadPlayer = new Thread(players[i], "Player - " + i);
+            GameTask threadPlayer = new GameTask(players[i], "Player - " + i);
             playersThreads[i] = threadPlayer;
-            threadPlayer.start();
+            threadPlayer.start(env.executor);
+        }
+        // one thread presses the keys of all the computer players, at the rate the config allows (unless the dealer
+        // replays the keys recorded in an earlier game)
+        Player[] computerPlayers = Arrays.stream(players).filter(player -> !player.isHuman()).toArray(Player[]::new);
+        if (!env.config.replayFile.isEmpty()) {
+            try {
+                replay = new InputReplay(env, players, InputLog.read(env.config.replayFile));
+            } catch (IOException e) {
+                env.logger.severe("cannot replay " + env.config.replayFile + ": " + e.getMessage());
+            }
+        } else if (computerPlayers.length > 0) {
+            computerKeys = new KeyScheduler(env, table, computerPlayers, env.random(KEYS_RANDOM_STREAM));
+            computerKeysThread = new GameTask(computerKeys, "computer-players");
+            computerKeysThread.start(env.executor);
         }
 
         while (!shouldFinish()) {
 
             try {
-                Collections.shuffle(deck);
-                env.ui.setCountdown(curr_time, false);
-                updateTimerDisplay(false);
+                deck.shuffle();
+                env.ui.setCountdown(env.config.turnTimeoutMillis, false);
                 placeCardsOnTable();
+                updateTimerDisplay(true); // the turn starts once all cards are placed
 
                 timerLoop();
 
-                updateTimerDisplay(false); // check if timer goes all the way down to 0 or 0.1 ms
+                updateTimerDisplay(false); // check if timer goes all the way down to 0
                 removeAllCardsFromTable();
-                curr_time = start_time + 999;
+                if (replay != null && replay.isDone() && !shouldFinish()) {
+                    env.logger.severe("the replayed key-presses ran out before the game ended");
+                    break;
+                }
+                if (!shouldFinish()) {
+                    ++reshuffles;
+                    GameJournal journal = table.journal;
+                    if (journal != null)
+                        journal.reshuffle(reshuffles);
+                }
             } catch (InterruptedException e) {System.out.println("dealer was caught here, end of while(!terminate)"); break;}
 
         }
@@ -166,6 +296,27 @@ public class Dealer implements Runnable {
             terminate();
         }
 
+        if (verifiers != null)
+            verifiers.shutdownNow();
+        if (inputLog != null) {
+            try {
+                inputLog.close();
+            } catch (IOException e) {
+                env.logger.severe("cannot record the key-presses in " + env.config.inputLogFile + ": " + e.getMessage());
+            }
+        }
+        GameJournal journal = table.journal;
+        if (journal != null) {
+            try {
+                journal.close();
+                if (journal.dropped() > 0)
+                    env.logger.warning(journal.dropped() + " journal records were dropped, the journal's segments were"
+                            + " mapped too late (see JournalSegmentKilobytes and JournalFlushSeconds)");
+            } catch (IOException e) {
+                env.logger.severe("cannot journal the game in " + env.config.journalFile + ": " + e.getMessage());
+            }
+        }
+
         System.out.println("SET simulation has ended :)");
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
         System.out.println("Thread dealer has been terminated.");
@@ -175,13 +326,21 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() throws InterruptedException{
-        while (!terminate && curr_time > reshuffleTime) {
+        while (!shouldFinish() && env.clock.nanoTime() < reshuffleTime) {
             sleepUntilWokenOrTimeout();
-            if (env.config.hints)
-                table.hints();
-            if (!playersToCheck.isEmpty())
+            freezes.advance(env.clock.nanoTime());
+            if (replay != null && replay.advance(env.clock.nanoTime()))
+                settle(); // the players may claim with the keys pressed
+            if (!playersToCheck.isEmpty()) {
                 checkSet();
-            updateTimerDisplay(false);
+                settle(); // the players act on their verdicts (e.g. freeze) before the countdown goes on
+            }
+            // woken up by a claim before the refresh is due - the countdown hasn't moved
+            if (env.clock.nanoTime() >= nextRefreshTime) {
+                if (env.config.hints)
+                    table.hints();
+                updateTimerDisplay(false);
+            }
         }
     }
 
@@ -194,11 +353,19 @@ public class Dealer implements Runnable {
         // reverse loop (from the end of the array to the start of it) on players: player[i].terminate()
         // dealerThread need to be shutdown
         terminate = true;
+        GameTask keysThread = computerKeysThread;
+        if (keysThread != null) { // no more key-presses for the players
+            computerKeys.terminate();
+            keysThread.interrupt();
+            try {
+                keysThread.join();
+            } catch (InterruptedException ignored) {  }
+        }
         for (int i = playersThreads.length-1; i >= 0; --i) {
             players[i].terminate();
             playersThreads[i].interrupt();
             try {
-                players[i]._notifyAll();
+                players[i]._unpark();
                 playersThreads[i].join();
             } catch (InterruptedException ignored) {  }
         }
@@ -209,75 +376,204 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Check if the game should be terminated or the game end conditions are met.
+     * @return true iff a player has key-presses to handle now (a virtual clock doesn't move on meanwhile, see Clock.drive).
+     */
+    private boolean playersBusy() {
+        for (Player player : players)
+            if (player.busy())
+                return true;
+        return false;
+    }
+
+    /**
+     * Check if the game should be terminated or the game end conditions are met: no legal set is left among the cards
+     * still in the game (see setsInGame).
      *
      * @return true iff the game should be finished.
      */
-    private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+    boolean shouldFinish() {
+        return terminate || setsInGame.isEmpty();
     }
 
     /**
      * Checking SET of player's who declared SET
+     * All the claims pending are checked together against the table as it is, and a claim sharing a slot with an
+     * earlier legal SET (by the time of the claim on the game's clock, then by player, see ClaimQueue.BY_TIME) is not
+     * complete, as if the earlier SET was removed first. Then the cards of all legal SETs are removed and replaced at once.
      */
-    private void checkSet() throws InterruptedException{
+    void checkSet() throws InterruptedException{
+
+        claims.clear();
+        while (playersToCheck.drainTo(claims) > 0) {
+            // drained by sequence number, which a player takes after reading the clock, so two claims may arrive in the
+            // reverse order of their times (and a replay may interleave the player threads differently)
+            claims.sort(ClaimQueue.BY_TIME);
+            int size = claims.size();
+            if (size > claimLegal.length) {
+                claimSlots = new int[size][];
+                claimCards = new int[size][];
+                claimLegal = new boolean[size];
+            }
+
+            // making a copy of each player's SET (the slots of his tokens on the table's token board) and its cards
+            for (int i = 0; i < size; ++i) {
+                ClaimQueue.Claim claim = claims.get(i);
+                int[] toRemove = table.tokens(claim.player);
+                // the tokens of the SET claimed may have been removed with another player's SET since
+                boolean complete = toRemove.length == 3 && Arrays.equals(toRemove, claim.slots);
+                claimSlots[i] = complete ? toRemove : null;
+                claimCards[i] = complete ? getSetOfCards(toRemove) : null;
+            }
 
-        PlayerState state = PlayerState.Playing;
+            testSets(size);
 
-        while (!playersToCheck.isEmpty()) {
-            int playerId = playersToCheck.remove();
-            // making a copy of player's SET
-            ArrayList<Integer> toRemove = (ArrayList<Integer>) players[playerId].clone();
-            //System.out.println("player " + playerId + " SET is: " + toRemove);
+            // giving the verdicts in the order of the claims
+            int won = 0, wonLength = 0; // winningClaims[0 .. won) are the claims with legal SETs, wonSlots[0 .. wonLength) their slots
+            for (int i = 0; i < size; ++i) {
+                ClaimQueue.Claim claim = claims.get(i);
+                int[] toRemove = claimSlots[i];
 
-            if (toRemove.size() < 3) {
-                players[playerId].setPlayerState(PlayerState.Playing);
-                players[playerId].setSetState(SetState.NotComplete);
+                // an earlier claim of this batch may be taking one of its slots
+                if (toRemove == null || anySlotWon(toRemove)) {
+                    players[claim.player].setSetState(SetState.NotComplete);
+                    verdict(claim, PlayerState.Playing);
+                }
+                else if (claimLegal[i]) {
+                    // set player && set state, the verdict is given once the table is dealt again
+                    ++legalSets;
+                    players[claim.player].setSetState(SetState.Legal);
+                    for (int slot : toRemove)
+                        slotWon[slot] = true;
+                    System.arraycopy(toRemove, 0, wonSlots, wonLength, toRemove.length);
+                    wonLength += toRemove.length;
+                    winningClaims[won++] = claim;
+                }
+                else { // SET of player is Illegal
+                    ++illegalSets;
+                    players[claim.player].setSetState(SetState.Illegal);
+                    verdict(claim, PlayerState.PlayingAfterPunishment);
+                }
             }
-            else if ((toRemove.size() == 3)) {
 
-                if (env.util.testSet(getSetOfCards(toRemove))) {
+            if (won > 0) {
+                int[] toRemove = Arrays.copyOf(wonSlots, wonLength);
 
-                    // set player && set state
-                    state = PlayerState.Playing;
-                    players[playerId].setSetState(SetState.Legal);
+                // from now on table is BLOCKED for everyone
+                table.gameOff();
 
-                    // from now on table is BLOCKED for everyone
-                    table.gameOff();
+                // remove every player's tokens from the SETs' slots - a single mask operation on the token board
+                table.removeTokens(toRemove);
 
-                    // remove tokens from slots
-                    for (Player player : players)
-                        player.removeTokensFromSlots(toRemove);
+                // remove cards from slots
+                removeCardsFromTable(toRemove);
 
-                    // remove cards from slots - from now on table is BLOCKED for everyone
-                    removeCardsFromTable(toRemove);
+                // place cards on table again and then release the TABLE
+                placeCardsOnTable();
 
-                    //System.out.println("after validating SET is legal, my SET size is 0? " + (players[playerId].getMySet().size() == 0));
+                // reset game clock
+                updateTimerDisplay(true);
 
-                    // place cards on table again and then release the TABLE
-                    placeCardsOnTable();
+                for (int i = 0; i < won; ++i)
+                    verdict(winningClaims[i], PlayerState.Playing);
+                Arrays.fill(slotWon, false);
+                Arrays.fill(winningClaims, 0, won, null);
+            }
+            claims.clear();
+        }
+    }
 
-                    // reset game clock
-                    curr_time = start_time + 999;
-                }
-                else { // SET of player is Illegal
-                    state = PlayerState.PlayingAfterPunishment;
-                    players[playerId].setSetState(SetState.Illegal);
-                }
+    /**
+     * Tests the SETs of the first claims of the batch, on the verifier threads if there are any.
+     *
+     * @param size - the number of claims to test.
+     * @post - claimLegal[i] is true iff claimCards[i] is a legal SET, for all 0 <= i < size.
+     */
+    private void testSets(int size) {
+        if (verifiers == null || size < 2) {
+            testSets(0, size);
+            return;
+        }
+        // the verifiers split the batch, and the dealer waits for all of them
+        int parts = Math.min(size, env.config.verifierThreads);
+        CompletableFuture<?>[] tested = new CompletableFuture<?>[parts];
+        for (int part = 0; part < parts; ++part) {
+            int from = part * size / parts, to = (part + 1) * size / parts;
+            tested[part] = CompletableFuture.runAsync(() -> testSets(from, to), verifiers);
+        }
+        CompletableFuture.allOf(tested).join();
+    }
 
-            }
+    /**
+     * Tests the SETs of the claims [from, to) of the batch.
+     */
+    private void testSets(int from, int to) {
+        for (int i = from; i < to; ++i)
+            claimLegal[i] = claimCards[i] != null && env.util.testSet(claimCards[i]);
+    }
 
-            players[playerId]._notify(state);
+    /**
+     * Gives a player the verdict on his claim, and records how long it took.
+     *
+     * @param claim - the claim.
+     * @param state - the state the player goes on with.
+     */
+    private void verdict(ClaimQueue.Claim claim, PlayerState state) {
+        GameJournal journal = table.journal;
+        if (journal != null) {
+            SetState verdict = players[claim.player].set_state;
+            journal.verdict(claim.player, verdict == SetState.Legal ? GameJournal.LEGAL
+                    : verdict == SetState.Illegal ? GameJournal.ILLEGAL : GameJournal.NOT_COMPLETE);
         }
+        players[claim.player]._notify(state);
+        long latency = System.nanoTime() - claim.nanoTime;
+        verdictNanos += latency; // only the dealer thread writes the claim statistics
+        if (latency > maxVerdictNanos)
+            maxVerdictNanos = latency;
+        ++claimsChecked;
+    }
+
+    /**
+     * Starts the verifier threads, if the configuration asks for any (see verifiers).
+     */
+    void startVerifiers() {
+        if (env.config.verifierThreads > 0 && verifiers == null)
+            verifiers = newVerifiers(env.config.verifierThreads);
+    }
+
+    /**
+     * @param threads - the number of verifier threads.
+     * @return - a pool of daemon threads for testing SETs.
+     */
+    private ExecutorService newVerifiers(int threads) {
+        AtomicInteger created = new AtomicInteger();
+        String name = Thread.currentThread().getName();
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, name + "-verifier-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param slots - the slots of a SET claimed.
+     * @return - true iff a legal SET checked earlier in this batch has one of the slots.
+     */
+    private boolean anySlotWon(int[] slots) {
+        for (int slot : slots)
+            if (slotWon[slot])
+                return true;
+        return false;
     }
 
     /**
      * Checks if any cards should be removed from the table and returns them to the deck.
      */
-    private void removeCardsFromTable(List<Integer> toRemove) {
+    void removeCardsFromTable(int[] toRemove) {
         // TODO implement
-        for (Integer slot : toRemove)
-            table.removeCard(slot);
+        // the cards of a legal set leave the game, along with every set they were part of
+        for (int card : table.removeCards(toRemove))
+            if (card != -1)
+                setsInGame.remove(card);
     }
 
     /**
@@ -286,90 +582,101 @@ public class Dealer implements Runnable {
      */
     void placeCardsOnTable() throws InterruptedException {
         // TODO implement
-        // 1. shuffle the indices of the empty slots
-        Collections.shuffle(table.emptySlots);
-        // 2. in each index we extract we place a card from the shuffled 'deck'
-        int curr_size = table.emptySlots.size();
-        for (int i = 0; i < curr_size; ++i) {
-            if (deck.size() > 0) {
-                int empty_slot = table.emptySlots.remove(0);
-                int card_to_place = deck.remove(0);
-                table.placeCard(card_to_place, empty_slot);
-            }
+        // in a random empty slot each time we place a card from the shuffled 'deck', then the table takes them all at once
+        // (the card stays in the game, so setsInGame doesn't change)
+        int toPlace = Math.min(table.emptySlots.size(), deck.size());
+        int[] cards = new int[toPlace];
+        int[] slots = new int[toPlace];
+        for (int i = 0; i < toPlace; ++i) {
+            slots[i] = table.emptySlots.takeRandom(random);
+            cards[i] = deck.draw();
         }
+        table.placeCards(cards, slots);
 
-        tableHaveEmptySlots = (table.emptySlots.size() != 0);
-        //System.out.println("there is empty slots of table = " + tableHaveEmptySlots + " empty slots on table are: " + table.emptySlots);
-        if (tableHaveEmptySlots) { // It means that from now on there aren't enough cards to place on the whole table, thus we'll remove this empty slots from player's 'slotsToPlace'
-            for (Player player : players) {
-                for (Integer emptySlot : table.emptySlots) {
-                    player.slotsToPlace.remove((Object) emptySlot);
-                    table.removeTokens(emptySlot);
-                }
-            }
-        }
+        tableHaveEmptySlots = !table.emptySlots.isEmpty();
+        if (tableHaveEmptySlots) // It means that from now on there aren't enough cards to place on the whole table, thus we'll remove the tokens from this empty slots
+            table.removeTokens(table.emptySlots.toArray());
 
-        // activate Table
+        // activate Table - a new epoch, the players waiting for it wake-up and resume playing
         table.gameOn();
-        // notify players to wake-up they can resume playing
-        table.wakeUp();
+    }
 
-        players[rand_player_to_wake.nextInt(players.length)]._notifyAll();
+    /**
+     * Lets the players act on what happened at the current time before the dealer goes on: a virtual clock waits for
+     * them to settle (see Clock.drive), real time doesn't wait.
+     */
+    private void settle() throws InterruptedException {
+        synchronized (dealerLock) {
+            env.clock.waitUntil(dealerLock, env.clock.nanoTime());
+        }
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until the next countdown refresh is due (or a freeze ends, or a replayed key is due) or until a player claims a SET.
      */
     private void sleepUntilWokenOrTimeout() {
         // TODO implement
         /*
-            Dealer sleeps for iterations of 1 second
-            Every second he wakes up and update Timer to be 1 second less
+            Dealer sleeps until the next refresh of the countdown (the reshuffle happens on a refresh as well), or of a
+            player's freeze
                ** Unless he is woken up by a Player that have completed a set and was inserted to his playersToCheck queue
          */
         synchronized (dealerLock) {
             try {
-                //System.out.println("Dealer is asleep");
-                dealerLock.wait(TIMEOUT);
-                //System.out.println("Dealer is awake !");
+                if (claimPending) // the other players acting at this time may claim too
+                    env.clock.waitUntil(dealerLock, env.clock.nanoTime());
+                long wakeUpTime = Math.min(nextRefreshTime, freezes.nextDeadline());
+                if (replay != null)
+                    wakeUpTime = Math.min(wakeUpTime, replay.nextDeadline());
+                long timeout = wakeUpTime - env.clock.nanoTime();
+                while (!terminate && !claimPending && timeout > 0) {
+                    env.clock.waitUntil(dealerLock, wakeUpTime);
+                    timeout = wakeUpTime - env.clock.nanoTime();
+                }
             } catch (InterruptedException e) {dealerThread.interrupt();  dealerThread.interrupted();}
+            claimPending = false;
         }
     }
 
     /**
      * Reset and/or update the countdown and the countdown display.
+     * The countdown is measured against reshuffleTime, so it doesn't depend on how often or how late the dealer
+     * wakes up, and the next refresh is scheduled for the moment the displayed value changes.
      */
     private void updateTimerDisplay(boolean reset) {
-        // TODO implement
-        if (curr_time <= env.config.turnTimeoutWarningMillis) {
-            //System.out.println("curr_time in ms: " + curr_time);
-            env.ui.setCountdown(curr_time, true);
-            curr_time -= TIMEOUT;
-        }
-        else {
-            env.ui.setCountdown(curr_time, false);
-            curr_time -= TIMEOUT;
-        }
+        long now = env.clock.nanoTime();
+        if (reset)
+            reshuffleTime = now + TimeUnit.MILLISECONDS.toNanos(env.config.turnTimeoutMillis);
+
+        long remaining = Math.max(0, reshuffleTime - now);
+        long warning = TimeUnit.MILLISECONDS.toNanos(env.config.turnTimeoutWarningMillis);
+        boolean warn = remaining <= warning;
+        long interval = TimeUnit.MILLISECONDS.toNanos(warn ? env.config.timerWarningRefreshMillis : env.config.timerRefreshMillis);
+
+        // out of warning the time is shown rounded up to the refresh interval (i.e. whole seconds by default)
+        long shown = warn ? remaining : (remaining + interval - 1) / interval * interval;
+        env.ui.setCountdown(TimeUnit.NANOSECONDS.toMillis(shown), warn);
+
+        // refresh when the remaining time drops to the next multiple of the interval (or to the warning time)
+        long next = remaining > 0 ? (remaining - 1) / interval * interval : 0;
+        if (!warn && next < warning)
+            next = warning;
+        nextRefreshTime = reshuffleTime - next;
     }
 
     /**
      * Returns all the cards from the table to the deck.
      */
-    private void removeAllCardsFromTable() {
+    void removeAllCardsFromTable() {
         // TODO implement
         table.gameOff();
 
-        Collections.shuffle(randomRemovalOfCards);
-        for (Integer rand_slot : randomRemovalOfCards) {
-            Integer card = table.slotToCard[rand_slot];
-            if (card != null) {
-//                for (int playerId = 0; playerId < table.tokenToSlot.get(rand_slot).size(); ++playerId)
-//                    players[table.tokenToSlot.get(rand_slot).get(playerId)].handleTokenActions(rand_slot);
-
-                table.removeCard(rand_slot);
+        // cards go back to the deck and stay in the game, so setsInGame doesn't change
+        // (the UI gets the slots in random order, to animate the removal)
+        Deck.shuffle(randomRemovalOfCards, randomRemovalOfCards.length, random);
+        for (int card : table.removeCards(randomRemovalOfCards))
+            if (card != -1)
                 deck.add(card);
-            }
-        }
 
         resetGame();
     }
@@ -403,64 +710,126 @@ public class Dealer implements Runnable {
             winners[p] = winners_list.get(p);
 
         System.out.println("winners are: " + winners_list + " with score: " + scores_list);
+        GameJournal journal = table.journal;
+        if (journal != null)
+            for (int winner : winners)
+                journal.winner(winner, players[winner].score());
         env.ui.announceWinner(winners);
     }
 
     // added methods
     /**
      * Add player id to the queue   - means nPlayer has completed a SET and awaits the dealer to check it
+     * (lock-free, any number of players may claim at once)
+     *
+     * @return - the sequence number of the claim.
      */
-    public void addPlayerToQueue(int nPlayer) { // need to be synchronized ?
-        playersToCheck.offer(nPlayer);
+    public long addPlayerToQueue(int nPlayer) {
+        int[] slots = table.tokens(nPlayer);
+        GameJournal journal = table.journal;
+        if (journal != null)
+            journal.claim(nPlayer, slots);
+        return playersToCheck.offer(nPlayer, slots, env.clock.nanoTime());
     }
 
     /**
      *
      //* @param player - the player id
-     * @param toClone - the player cloned list of slots where his 3 tokens where placed to make a SET
+     * @param toClone - the player copied slots where his 3 tokens where placed to make a SET
      * @return player's set of cards
      */
-    public int[] getSetOfCards(List<Integer> toClone) {
+    public int[] getSetOfCards(int[] toClone) {
         int[] cards = new int[3];
         //System.out.println("SET of cards to be check is - " + toClone);
 
-        for (int i = 0; i < toClone.size(); ++i) {
-            if (toClone.get(i) != null && table.slotToCard[toClone.get(i)] != null)
-                cards[i] = table.slotToCard[toClone.get(i)];
+        for (int i = 0; i < toClone.length; ++i) {
+            if (table.slotToCard[toClone[i]] != -1)
+                cards[i] = table.slotToCard[toClone[i]];
         }
 
         return cards;
     }
 
-    public void resetGame() {
+    /**
+     * @return - the number of legal SETs found so far.
+     */
+    public int legalSets() {
+        return legalSets;
+    }
+
+    /**
+     * @return - the number of illegal SETs claimed so far.
+     */
+    public int illegalSets() {
+        return illegalSets;
+    }
 
-        env.ui.removeTokens();
+    /**
+     * @return - the number of times the deck was reshuffled due to turn timeout so far.
+     */
+    public int reshuffles() {
+        return reshuffles;
+    }
 
-        // Resetting all players states: set_state && player_state && player.mySet && table.playersSets for each player
-        for (Player player : players) {
-            player.setPlayerState(PlayerState.Playing);
-            player.setSetState(SetState.NotComplete);
-            player.clearPlayerSet();
-        }
+    /**
+     * @return - the number of claims given a verdict so far.
+     */
+    public int claimsChecked() {
+        return claimsChecked;
+    }
 
-        // Clearing queue of player's SET to be checked
-        playersToCheck = new ArrayBlockingQueue<Integer>(players.length);
+    /**
+     * @return - the total time (in nanoseconds) from claim to verdict of the claims checked so far.
+     */
+    public long verdictNanos() {
+        return verdictNanos;
+    }
 
+    /**
+     * @return - the longest time (in nanoseconds) from claim to verdict so far.
+     */
+    public long maxVerdictNanos() {
+        return maxVerdictNanos;
     }
 
-    private List<Integer> checkPlayers(int slot) {
+    public void resetGame() {
+
+        // Clearing the token board (and the tokens on the UI) at once
+        table.removeAllTokens();
 
-        List<Integer> ans = new ArrayList<>();
+        // Clearing queue of player's SET to be checked (claims still on their way in belong to the old epoch, and are dropped)
+        // before the players are released: a player marks himself waiting before claiming, so one whose claim is dropped
+        // is released below, and one claiming after the release claims in the new epoch
+        playersToCheck.reset();
+
+        // Resetting all players states: set_state && player_state for each player
+        // (a player waiting for his SET to be checked gets it back as a verdict, his claim is discarded)
         for (Player player : players) {
-            if (player.getMySet().contains(slot))
-                ans.add(player.id);
+            player.setSetState(SetState.NotComplete);
+            player._notify(PlayerState.Playing);
         }
 
-        return ans;
     }
 
-    public synchronized void wakeUp() {
-        notify();
+    /**
+     * Freezes a player: the dealer shows the time left on the UI and unfreezes him when it ends, the player doesn't sleep.
+     *
+     * @param player - the player to freeze.
+     * @param millis - the freeze time in milliseconds.
+     */
+    public void freeze(Player player, long millis) {
+        freezes.schedule(player, env.clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+        wakeUp(); // the freeze may end before the dealer would wake up
+    }
+
+    /**
+     * Wake the dealer up to check the SET that was just inserted to his queue (or a freeze that was just scheduled)
+     */
+    public void wakeUp() {
+        synchronized (dealerLock) {
+            claimPending = true;
+            dealerLock.notifyAll();
+        }
     }
 
     public void _interrupt() {
@@ -0,0 +1,109 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class holds the cards left in the dealer's deck in a primitive array.
+ * The cards in the deck are cards[0 .. size), and the top of the deck is the cursor cards[size - 1], so drawing a card
+ * and returning a card to the deck take O(1) and shuffling is an in-place Fisher-Yates shuffle.
+ * Only the dealer thread uses it.
+ *
+ * @inv 0 <= size() <= capacity
+ */
+public class Deck {
+
+    /**
+     * The cards, the ones in the deck are at [0, size).
+     */
+    private final int[] cards;
+
+    /**
+     * The number of cards in the deck (the cursor one past its top).
+     */
+    private int size;
+
+    /**
+     * The random number generator used for shuffling (seed it for reproducible runs).
+     */
+    private final Random random;
+
+    /**
+     * Creates a full deck, of the cards 0 .. deckSize - 1 in increasing order.
+     *
+     * @param deckSize - the number of cards in the game.
+     * @param random   - the random number generator to shuffle with.
+     */
+    public Deck(int deckSize, Random random) {
+        this.random = random;
+        cards = new int[deckSize];
+        for (int card = 0; card < deckSize; ++card)
+            cards[card] = card;
+        size = deckSize;
+    }
+
+    /**
+     * @return - the number of cards in the deck.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - true iff there are no cards in the deck.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Takes the card at the top of the deck.
+     *
+     * @return - the card, or -1 if the deck is empty.
+     */
+    public int draw() {
+        return size == 0 ? -1 : cards[--size];
+    }
+
+    /**
+     * Puts a card on top of the deck.
+     *
+     * @param card - a card that isn't in the deck.
+     * @throws IllegalStateException - if the deck is full.
+     */
+    public void add(int card) {
+        if (size == cards.length)
+            throw new IllegalStateException("the deck is full, can't add card " + card);
+        cards[size++] = card;
+    }
+
+    /**
+     * Shuffles the cards in the deck.
+     */
+    public void shuffle() {
+        shuffle(cards, size, random);
+    }
+
+    /**
+     * @return - the cards in the deck, from its bottom to its top.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(cards, size);
+    }
+
+    /**
+     * Shuffles a prefix of an array in place (Fisher-Yates).
+     *
+     * @param array  - the array.
+     * @param length - the length of the prefix to shuffle.
+     * @param random - the random number generator to use.
+     */
+    public static void shuffle(int[] array, int length, Random random) {
+        for (int i = length - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class keeps the set of empty slots on the table as a bitset (bit slot % 64 of word slot / 64).
+ * Membership is a single read and picking a random empty slot only looks at the set bits, so neither boxes nor scans
+ * a list. Only the dealer changes it, players may read it at any time.
+ *
+ * @inv 0 <= size() <= capacity
+ */
+public class FreeSlots {
+
+    /**
+     * The bits of the empty slots.
+     */
+    private final AtomicLongArray words;
+
+    /**
+     * The number of slots.
+     */
+    private final int capacity;
+
+    /**
+     * The number of empty slots.
+     */
+    private volatile int size;
+
+    /**
+     * @param capacity - the number of slots, all of them start empty.
+     */
+    public FreeSlots(int capacity) {
+        this.capacity = capacity;
+        words = new AtomicLongArray((capacity + 63) / 64);
+        for (int slot = 0; slot < capacity; ++slot)
+            add(slot);
+    }
+
+    /**
+     * Marks a slot as empty.
+     *
+     * @param slot - the slot.
+     * @return - true iff the slot wasn't empty before.
+     */
+    public boolean add(int slot) {
+        long bit = 1L << slot;
+        long word = words.getAndUpdate(slot >> 6, w -> w | bit);
+        if ((word & bit) != 0) return false;
+        ++size; // only the dealer changes the set
+        return true;
+    }
+
+    /**
+     * Marks a slot as taken.
+     *
+     * @param slot - the slot.
+     * @return - true iff the slot was empty before.
+     */
+    public boolean remove(int slot) {
+        long bit = 1L << slot;
+        long word = words.getAndUpdate(slot >> 6, w -> w & ~bit);
+        if ((word & bit) == 0) return false;
+        --size;
+        return true;
+    }
+
+    /**
+     * @param slot - the slot.
+     * @return - true iff the slot is empty.
+     */
+    public boolean contains(int slot) {
+        return (words.get(slot >> 6) & (1L << slot)) != 0;
+    }
+
+    /**
+     * @return - the number of empty slots.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - true iff there are no empty slots.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Takes an empty slot chosen uniformly at random.
+     *
+     * @param random - the random number generator to use.
+     * @return - the slot taken, or -1 if there are no empty slots.
+     */
+    public int takeRandom(Random random) {
+        if (size == 0) return -1;
+        int index = random.nextInt(size);
+        for (int w = 0; w < words.length(); ++w) {
+            long word = words.get(w);
+            int count = Long.bitCount(word);
+            if (index < count) {
+                for (int i = 0; i < index; ++i)
+                    word &= word - 1; // drop the lowest bits until the chosen one is the lowest
+                int slot = w * 64 + Long.numberOfTrailingZeros(word);
+                remove(slot);
+                return slot;
+            }
+            index -= count;
+        }
+        return -1;
+    }
+
+    /**
+     * @return - the empty slots, in increasing order.
+     */
+    public int[] toArray() {
+        int[] slots = new int[Math.min(size, capacity)];
+        int i = 0;
+        for (int w = 0; w < words.length() && i < slots.length; ++w)
+            for (long word = words.get(w); word != 0 && i < slots.length; word &= word - 1)
+                slots[i++] = w * 64 + Long.numberOfTrailingZeros(word);
+        return i == slots.length ? slots : Arrays.copyOf(slots, i);
+    }
+}
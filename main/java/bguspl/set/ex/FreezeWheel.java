@@ -0,0 +1,185 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps the freezes of all the players of a game on a hashed timing wheel, driven by the dealer thread.
+ * A frozen player doesn't sleep: the wheel counts his freeze down on the UI once a second and unfreezes him when it ends.
+ *
+ * The wheel is an array of buckets, each a list of timers, and time moves through it a tick at a time. A timer due in
+ * n ticks goes to bucket (current tick + n) % buckets, with the number of whole rotations it has to wait there.
+ * Any thread may schedule a freeze (through a lock-free inbox); only the dealer advances the wheel.
+ */
+public class FreezeWheel {
+
+    /**
+     * The length of a tick.
+     */
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The number of buckets (a power of 2).
+     */
+    static final int BUCKETS = 512;
+
+    /**
+     * The interval between updates of a freeze countdown on the UI.
+     */
+    private static final long DISPLAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * A frozen player, waiting in a bucket for the next update of his freeze.
+     */
+    private static class Timer {
+        final Player player;
+        final long deadline; // when the freeze ends
+        long due; // when the timer should fire next
+        int rounds; // the rotations left before it fires
+        Timer next; // the next timer in the bucket
+
+        Timer(Player player, long deadline) {
+            this.player = player;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * The buckets, each the head of a list of timers.
+     */
+    private final Timer[] buckets = new Timer[BUCKETS];
+
+    /**
+     * The time of tick 0.
+     */
+    private final long origin;
+
+    /**
+     * The last tick processed.
+     */
+    private long tick;
+
+    /**
+     * Freezes scheduled but not on the wheel yet.
+     */
+    private final ConcurrentLinkedQueue<Timer> inbox = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of players frozen.
+     */
+    private final AtomicInteger frozen = new AtomicInteger();
+
+    /**
+     * @param now - the current time (in nanoseconds, of the game's clock).
+     */
+    public FreezeWheel(long now) {
+        origin = now;
+    }
+
+    /**
+     * Freezes a player (called by any thread).
+     *
+     * @param player   - the player to freeze.
+     * @param deadline - the time the freeze ends.
+     */
+    public void schedule(Player player, long deadline) {
+        frozen.incrementAndGet();
+        inbox.add(new Timer(player, deadline));
+    }
+
+    /**
+     * @return - the number of players frozen.
+     */
+    public int frozen() {
+        return frozen.get();
+    }
+
+    /**
+     * Moves the wheel to the current time, updating the freezes due on the way (called by the dealer thread only).
+     *
+     * @param now - the current time.
+     * @return - the number of players unfrozen.
+     */
+    public int advance(long now) {
+        int unfrozen = 0;
+        for (Timer timer = inbox.poll(); timer != null; timer = inbox.poll()) {
+            timer.due = nextDisplay(timer.deadline, now);
+            insert(timer);
+        }
+
+        long last = (now - origin) / TICK_NANOS;
+        for (; tick < last; ++tick) {
+            int bucket = (int) ((tick + 1) & (BUCKETS - 1));
+            Timer pending = buckets[bucket];
+            buckets[bucket] = null;
+            while (pending != null) {
+                Timer timer = pending;
+                pending = pending.next;
+                if (timer.rounds > 0) {
+                    --timer.rounds;
+                    timer.next = buckets[bucket];
+                    buckets[bucket] = timer;
+                } else if (fire(timer, now))
+                    ++unfrozen;
+            }
+        }
+        return unfrozen;
+    }
+
+    /**
+     * @return - the time the wheel should next be advanced at, Long.MAX_VALUE if no one is frozen.
+     */
+    public long nextDeadline() {
+        if (!inbox.isEmpty())
+            return origin + tick * TICK_NANOS; // already due
+        if (frozen.get() == 0)
+            return Long.MAX_VALUE;
+        for (int i = 1; i <= BUCKETS; ++i)
+            for (Timer timer = buckets[(int) ((tick + i) & (BUCKETS - 1))]; timer != null; timer = timer.next)
+                if (timer.rounds == 0)
+                    return origin + (tick + i) * TICK_NANOS;
+        return origin + (tick + BUCKETS + 1) * TICK_NANOS; // every timer waits at least a rotation
+    }
+
+    /**
+     * Updates a player's freeze: unfreezes him if it is over, or shows the time left and waits for the next update.
+     *
+     * @return - true iff the player was unfrozen.
+     */
+    private boolean fire(Timer timer, long now) {
+        long left = timer.deadline - now;
+        if (left <= 0) {
+            frozen.decrementAndGet();
+            timer.player.unfreeze();
+            return true;
+        }
+        // shown in whole seconds (rounded up), as the countdown was before
+        timer.player.showFreeze(TimeUnit.NANOSECONDS.toMillis(left + DISPLAY_NANOS - 1) / 1000 * 1000);
+        timer.due = nextDisplay(timer.deadline, now);
+        insert(timer);
+        return false;
+    }
+
+    /**
+     * @return - the time the freeze ending at deadline should next be updated: when the time left reaches a whole
+     * second, or the deadline.
+     */
+    private static long nextDisplay(long deadline, long now) {
+        long left = deadline - now;
+        return left <= 0 ? now : deadline - (left - 1) / DISPLAY_NANOS * DISPLAY_NANOS;
+    }
+
+    /**
+     * Puts a timer in the bucket of the first tick at or after it is due.
+     */
+    private void insert(Timer timer) {
+        long ticks = (timer.due - origin + TICK_NANOS - 1) / TICK_NANOS;
+        if (ticks <= tick)
+            ticks = tick + 1;
+        timer.rounds = (int) ((ticks - tick - 1) / BUCKETS);
+        int bucket = (int) (ticks & (BUCKETS - 1));
+        timer.next = buckets[bucket];
+        buckets[bucket] = timer;
+    }
+}
@@ -0,0 +1,84 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.InputLog;
+
+import java.util.List;
+
+/**
+ * This class presses the keys of a recorded game (see InputLog) at the times they were pressed, in place of the
+ * computer players' KeyScheduler. The dealer presses them between his waits, like he ends the freezes, so they come
+ * in order with everything else the dealer does: on a virtual clock the game is replayed as fast as it can run, on the
+ * system clock at its original speed.
+ *
+ * Only the dealer thread uses a replay.
+ */
+public class InputReplay {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The players of the game.
+     */
+    private final Player[] players;
+
+    /**
+     * The key-presses to replay, in order.
+     */
+    private final List<InputLog.Entry> entries;
+
+    /**
+     * The time (env.clock.nanoTime()) the game started.
+     */
+    private final long origin;
+
+    /**
+     * The index of the next key-press to replay.
+     */
+    private int next;
+
+    /**
+     * @param env     - the environment object.
+     * @param players - the players of the game.
+     * @param entries - the key-presses to replay.
+     */
+    public InputReplay(Env env, Player[] players, List<InputLog.Entry> entries) {
+        this.env = env;
+        this.players = players;
+        this.entries = entries;
+        origin = env.clock.nanoTime();
+    }
+
+    /**
+     * @return - the time (env.clock.nanoTime()) of the next key-press, Long.MAX_VALUE if there are none left.
+     */
+    public long nextDeadline() {
+        return next < entries.size() ? origin + entries.get(next).time : Long.MAX_VALUE;
+    }
+
+    /**
+     * Presses the keys that were pressed by now, as they were queued then.
+     *
+     * @param now - the current time.
+     * @return - true iff any key was pressed.
+     */
+    public boolean advance(long now) {
+        int from = next;
+        for (; next < entries.size() && origin + entries.get(next).time <= now; ++next) {
+            InputLog.Entry entry = entries.get(next);
+            if (entry.player >= 0 && entry.player < players.length)
+                players[entry.player].replayKey(entry.slot, entry.epoch);
+        }
+        return next > from;
+    }
+
+    /**
+     * @return - true iff all the key-presses were replayed.
+     */
+    public boolean isDone() {
+        return next == entries.size();
+    }
+}
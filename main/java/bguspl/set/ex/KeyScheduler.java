@@ -0,0 +1,174 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * This class presses the keys of all the computer players of a game, from a single thread: each player's next key-press
+ * waits in a queue ordered by its due time, and the thread sleeps on the game's clock until the earliest one.
+ *
+ * A player presses at most keys-per-second keys, each interval stretched or shrunk at random by the jitter, and only
+ * when his presses can be used: he isn't frozen or waiting for a verdict, the table can be played, and his queue of
+ * key-presses has room (back-pressure, nothing is pressed just to be dropped). After the table is dealt or he was
+ * blocked he first takes his reaction time, which is drawn for each player once, around the configured one.
+ */
+public class KeyScheduler implements Runnable {
+
+    /**
+     * The pause before checking again a player who can't press now, when he has no key delay.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A computer player and his next key-press.
+     */
+    private static class Schedule {
+        final Player player;
+        final long reactionNanos; // the pause before pressing after the table was dealt or the player was blocked
+        long due; // when to press next (or check if the player can)
+        long turn; // breaks ties between equal due times, first come first served
+        boolean ready; // true iff the player could press at his last turn
+        int epoch; // the table's dealing epoch at his last turn
+
+        Schedule(Player player, long reactionNanos) {
+            this.player = player;
+            this.reactionNanos = reactionNanos;
+        }
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * Game entities.
+     */
+    private final Table table;
+
+    /**
+     * The computer players, the one whose key-press is due first at the head.
+     */
+    private final PriorityQueue<Schedule> schedules;
+
+    /**
+     * The least time between two key-presses of a player (0 - no limit).
+     */
+    private final long intervalNanos;
+
+    /**
+     * The largest part of an interval (or reaction time) added or taken at random, between 0 and 1.
+     */
+    private final double jitter;
+
+    /**
+     * Draws the jitter and the reaction times (only used by the scheduler thread after construction).
+     */
+    private final Random random;
+
+    /**
+     * The number of turns taken so far (the tie breaker of the next turn).
+     */
+    private long turns;
+
+    /**
+     * True iff the scheduler should stop.
+     */
+    private volatile boolean terminate;
+
+    /**
+     * @param env     - the environment object.
+     * @param table   - the table object.
+     * @param players - the computer players.
+     * @param random  - the random number generator for the jitter and the reaction times.
+     */
+    public KeyScheduler(Env env, Table table, Player[] players, Random random) {
+        this.env = env;
+        this.table = table;
+        this.random = random;
+        jitter = env.config.computerKeyJitter;
+        intervalNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(env.config.computerKeyDelayMillis),
+                env.config.computerKeysPerSecond > 0 ? (long) (1e9 / env.config.computerKeysPerSecond) : 0);
+        schedules = new PriorityQueue<>(Math.max(1, players.length),
+                Comparator.<Schedule>comparingLong(s -> s.due).thenComparingLong(s -> s.turn));
+        long now = env.clock.nanoTime();
+        for (Player player : players) {
+            Schedule schedule = new Schedule(player, jittered(TimeUnit.MILLISECONDS.toNanos(env.config.computerReactionMillis)));
+            schedule.due = now;
+            schedule.turn = turns++;
+            schedules.add(schedule);
+        }
+    }
+
+    /**
+     * The scheduler thread starts here: takes the players' turns in order of due time, sleeping until the next one.
+     */
+    @Override
+    public void run() {
+        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
+        while (!terminate && !schedules.isEmpty()) {
+            Schedule next = schedules.peek();
+            long now = env.clock.nanoTime();
+            if (next.due > now) {
+                try {
+                    env.clock.sleepUntil(next.due);
+                } catch (InterruptedException e) { break; }
+                continue;
+            }
+            schedules.poll();
+            next.due = turn(next, now);
+            next.turn = turns++;
+            schedules.add(next);
+        }
+        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Presses a key for the player if he can use it.
+     *
+     * @param schedule - the player's schedule.
+     * @param now      - the current time.
+     * @return - the time of the player's next turn.
+     */
+    private long turn(Schedule schedule, long now) {
+        Player player = schedule.player;
+        long idle = Math.max(intervalNanos, IDLE_NANOS);
+        if (!player.canPressKey()) { // frozen, waiting for a verdict or the table is being dealt
+            schedule.ready = false;
+            return now + idle;
+        }
+        int epoch = table.epoch();
+        if (!schedule.ready || schedule.epoch != epoch) { // something new to react to
+            schedule.ready = true;
+            schedule.epoch = epoch;
+            if (schedule.reactionNanos > 0)
+                return now + schedule.reactionNanos; // jittered once, when drawn for the player
+        }
+        if (player.queueOfActions.size() >= player.queueOfActions.capacity()) // the player thread is behind
+            return now + idle;
+
+        if (!player.pressComputerKey()) // the strategy has nothing to press now
+            return now + idle;
+        return now + jittered(intervalNanos);
+    }
+
+    /**
+     * @param nanos - a time.
+     * @return - the time, plus or minus up to jitter of it at random.
+     */
+    private long jittered(long nanos) {
+        return jitter == 0 ? nanos : (long) (nanos * (1 + jitter * (2 * random.nextDouble() - 1)));
+    }
+
+    /**
+     * Stops the scheduler (it also stops when its thread is interrupted).
+     */
+    public void terminate() {
+        terminate = true;
+    }
+}
@@ -1,13 +1,15 @@
 package bguspl.set.ex;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
 // import java.util.concurrent.locks.ReentrantLock;
 // import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 import bguspl.set.Env;
+import bguspl.set.GameJournal;
+import bguspl.set.InputLog;
 //import com.sun.tools.javac.util.Pair;
 
 import java.util.*;
@@ -38,12 +40,7 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    private Thread playerThread;
-
-    /**
-     * The thread of the AI (computer) player (an additional thread used to generate key presses).
-     */
-    private Thread aiThread;
+    private volatile Thread playerThread;
 
     /**
      * True iff the player is human (not a computer player).
@@ -65,12 +62,12 @@ public class Player implements Runnable {
     /**
      * Queue of key-presses; consists from slots that player (AI OR human) have clicked
      */
-    public /*final */ BlockingQueue<Integer> queueOfActions; // not final for tests
+    public final ActionRing queueOfActions; // public for tests
 
     /**
-     * The slot's in Table that player hasn't placed a token on yet
+     * The key-presses the player thread took from queueOfActions to handle
      */
-    public List<Integer> slotsToPlace;
+    private final int[] actions;
 
     /**
      * The dealer that runs the program, we need access to his Thread to notify him
@@ -82,11 +79,6 @@ public class Player implements Runnable {
      */
     public volatile PlayerState state; // public for tests
 
-    /**
-     * Player's SET; consist from the slot he has placed tokens on
-     */
-    List<Integer> mySet;
-
     /**
      * The player's SET state: Legal OR Illegal:
      * The player accordingly will address Player.point() method Or Player.penalty() method respectively
@@ -94,19 +86,40 @@ public class Player implements Runnable {
     protected volatile SetState set_state; // protected for tests
 
     /**
-     * Random for AI key-press generator
+     * The AI's way of choosing key-presses (used by the dealer's KeyScheduler thread only)
+     */
+    private volatile AiStrategy strategy;
+
+    /**
+     * The game's random number generators (see Env.random) of the players' strategies are RANDOM_STREAM + id
+     */
+    private static final long RANDOM_STREAM = 100;
+
+    /**
+     * Lock player is holding while handling his key-presses, and waiting on for them to be inserted
+     * (a Lock rather than a monitor, so a virtual thread waiting on it doesn't pin its carrier thread)
      */
-    private Random rand_generator;
+    private final ReentrantLock actionsLock;
 
     /**
-     * Lock-Object player is grabbing on while waiting for dealer to check his SET
+     * Signalled (under actionsLock) when a key-press is inserted to an empty queueOfActions
      */
-    private static final Object obj = new Object();
+    private final Condition actionInserted;
 
     /**
-     * Penalty time Intervals for human players
+     * True iff the player thread is handling key-presses it took from queueOfActions (their tokens may not show yet)
      */
-    private final int FREEZE_PENALTY_INTERVAL = 1000;
+    private volatile boolean handling;
+
+    /**
+     * True iff the player thread is claiming a SET and the dealer wasn't told yet
+     */
+    private volatile boolean claiming;
+
+    /**
+     * True iff the player is frozen (after a point or a penalty); his key-presses are ignored until the dealer unfreezes him
+     */
+    private volatile boolean frozen;
 
     public ReentrantLock playersQueueLock;
 
@@ -129,15 +142,14 @@ public class Player implements Runnable {
         terminate = false;
 
         // added to CTR
-        queueOfActions = new ArrayBlockingQueue<Integer>(env.config.featureSize, true);
-        slotsToPlace = new ArrayList<>();
-        for (int i = 0; i < env.config.tableSize; ++i)
-            slotsToPlace.add(i);
+        queueOfActions = new ActionRing(env.config.featureSize);
+        actions = new int[queueOfActions.capacity()];
         this.dealer = dealer;
         state = PlayerState.Playing;
-        mySet = new ArrayList<>();
         set_state = SetState.NotComplete;
-        rand_generator = new Random();
+        strategy = human ? null : AiStrategy.of(env, env.random(RANDOM_STREAM + id));
+        actionsLock = new ReentrantLock();
+        actionInserted = actionsLock.newCondition();
 
         playersQueueLock = new ReentrantLock(true);
 
@@ -151,10 +163,6 @@ public class Player implements Runnable {
         playerThread = Thread.currentThread();
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + "starting.");
         System.out.println("Thread" + Thread.currentThread().getName() + " starting.");
-        if (!human) {
-            createArtificialIntelligence();
-            System.out.println("player thread is after createArtificialIntelligence()");
-        }
 
         while (!terminate) {
             //TODO implement main player loop
@@ -169,125 +177,134 @@ public class Player implements Runnable {
                 }
             }
 
-            synchronized (queueOfActions) {
+            actionsLock.lock();
+            try {
                 while (!terminate && queueOfActions.isEmpty()) {
                     try {
                         _wait();
                     } catch (InterruptedException e) { table.wakeUp(); playerThread.interrupted(); break; }
                 }
+            } finally {
+                actionsLock.unlock();
+            }
 
-                try {
-                    while (!terminate && !queueOfActions.isEmpty()) { // an action was inserted by keyPressed()
-                        //System.out.println("queueOfActions isn't empty");
-
-                        Integer slot = queueOfActions.poll();
-                        handleTokenActions(slot);
-
-                        if (mySet.size() == 3) {
-                            if (state == PlayerState.Playing) {
-                                //System.out.printf("player %s has declared a SET", id);
-
-                                dealer.addPlayerToQueue(id); // add player to dealer's queue for his SET to be checked
-                                dealer.wakeUp(); // notify dealer that a SET has inserted to his queue and need to be checked
-                                state = PlayerState.Waiting; // wait to be checked
-
-                                try {
-                                    playersQueueLock.lock();
-                                    synchronized (obj) {
-                                        while (state == PlayerState.Waiting) {
-                                            obj.wait();
-                                        }
-                                    }
-                                } catch (Exception e ) {System.out.printf("player %s is stuck at queue lock",id); System.out.println();
-                                        table.wakeUp(); break;}
-                                finally {
-                                    playersQueueLock.unlock();
-                                }
-
-
-                                // Checking player.set_state to direct player to his rightful outcome
-                                if (set_state == SetState.Legal) {
-                                    //System.out.printf("player %s is legal", id); //System.out.println();
-                                    point();
-                                    //System.out.println("after point(), the slots we have to choose from are - " + slotsToPlace);
-                                } else if (set_state == SetState.Illegal) {
-                                    //System.out.printf("player %s is illegal", id); //System.out.println();
-                                    penalty();
-                                } else { // set_state == SetState.NotComplete
-                                    //System.out.printf("actually player %s hasn't completed a set", id);
+            // handling the key-presses outside actionsLock, so keys pressed meanwhile don't wait for us
+            int epoch = table.epoch();
+            handling = true; // before draining, so the queue and this flag don't both look idle meanwhile
+            int count = queueOfActions.drainTo(actions, epoch); // presses of earlier epochs were aimed at other cards
+            try {
+                for (int i = 0; i < count && !terminate; ++i) { // an action was inserted by keyPressed()
+                    if (epoch != table.epoch() || frozen) // the dealer has dealt since (the key-presses are stale), or we were frozen
+                        break;
+                    int slot = actions[i];
+                    handleTokenActions(slot, epoch); // the dealer may deal between the check above and the token
+
+                    if (table.tokenCount(id) == 3) { // player's SET is the slots he has placed tokens on (table's token board)
+                        if (state == PlayerState.Playing) {
+                            //System.out.printf("player %s has declared a SET", id);
+
+                            claiming = true; // busy until the dealer knows (see busy)
+                            state = PlayerState.Waiting; // wait to be checked (before queueing, the verdict may come right away)
+                            dealer.addPlayerToQueue(id); // add player to dealer's queue for his SET to be checked
+                            dealer.wakeUp(); // notify dealer that a SET has inserted to his queue and need to be checked
+                            claiming = false;
+                            env.clock.idle();
+
+                            try {
+                                playersQueueLock.lock();
+                                // the dealer hands the verdict to this player only (see _notify), so no one else wakes us
+                                while (state == PlayerState.Waiting) {
+                                    LockSupport.park(this);
+                                    if (Thread.interrupted())
+                                        throw new InterruptedException();
                                 }
-                            } else // state == PlayerState.PlayingAfterPunishment
-                                ;
-                        } else {
-                            if (state == PlayerState.PlayingAfterPunishment)
-                                setPlayerState(PlayerState.Playing);
-                        }
+                            } catch (Exception e ) {System.out.printf("player %s is stuck at queue lock",id); System.out.println();
+                                    table.wakeUp(); break;}
+                            finally {
+                                playersQueueLock.unlock();
+                            }
+
+
+                            // Checking player.set_state to direct player to his rightful outcome
+                            if (set_state == SetState.Legal) {
+                                //System.out.printf("player %s is legal", id); //System.out.println();
+                                point();
+                                //System.out.println("after point(), the slots we have to choose from are - " + slotsToPlace);
+                            } else if (set_state == SetState.Illegal) {
+                                //System.out.printf("player %s is illegal", id); //System.out.println();
+                                penalty();
+                            } else { // set_state == SetState.NotComplete
+                                //System.out.printf("actually player %s hasn't completed a set", id);
+                            }
+                        } else // state == PlayerState.PlayingAfterPunishment
+                            ;
+                    } else {
+                        if (state == PlayerState.PlayingAfterPunishment)
+                            setPlayerState(PlayerState.Playing);
                     }
-                } catch (Exception e) {
-                    System.out.printf("Thread player %s run() - after while(!queue.isEmpty())", id); System.out.println();
-                    table.wakeUp(); playerThread.interrupted(); break;
                 }
+            } catch (Exception e) {
+                System.out.printf("Thread player %s run() - after while(!queue.isEmpty())", id); System.out.println();
+                table.wakeUp(); playerThread.interrupted(); break;
+            } finally {
+                handling = false;
+                env.clock.idle(); // a virtual clock may move on now (see busy)
             }
 
         }
 
-        
-        if (!human){
-                try {
-                    aiThread.interrupt();
-                    aiThread.join();
-                } catch (InterruptedException e) { table.wakeUp();
-                    //System.out.printf("AI of player %s was in aiThread.join()", id); System.out.println();
-                }
-        } 
-        
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
         System.out.println("Thread" + Thread.currentThread().getName() + " terminated.");
     }
 
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * @return - true iff a key pressed by the AI now can be used: the table can be played, and the player isn't frozen or
+     * waiting for a verdict (the dealer's KeyScheduler presses the AI's keys).
      */
-    private void createArtificialIntelligence() {
-        System.out.println("AI has been created");
-        // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-            System.out.printf("Starting in player %s AI.run()", id); System.out.println();
-            while (!terminate && !human) {
-                // TODO implement player key press simulator
-                //System.out.println("Thread player AI " + Thread.currentThread().getName() + " is playing");
-                //System.out.println("table allowing AI player " + id + " to play = " + table.canPlay());
-                while (!table.canPlay()) {
-                    try {
-                        table._wait();
-                    } catch (InterruptedException e) {
-                        System.out.printf("AI of player %s is waiting for table to play", id); System.out.println();
-                        aiThread.interrupted(); table.wakeUp(); break;
-                    }
-                }
-
-                // For testing AI with human players, here we'll Sleep AI threads a bit for them to not be lightning fast
+    boolean canPressKey() {
+        return !terminate && !frozen && state != PlayerState.Waiting && set_state == SetState.NotComplete && table.canPlay();
+    }
 
+    /**
+     * Presses the key the AI's strategy chooses, if any (called by the dealer's KeyScheduler thread).
+     *
+     * @return - true iff a key was pressed.
+     */
+    boolean pressComputerKey() {
+        int to_place = strategy.nextKey(table, this);
+        if (to_place == -1)
+            return false;
+        keyPressed(to_place);
+        return true;
+    }
 
-                while (!terminate && queueOfActions.size() <= dealer.SET_SIZE) {
-                    int to_place = rand_generator.nextInt(table.slotToCard.length);
-                    if (!table.emptySlots.isEmpty()) {
-                        // table.emptySlots = {0,1,2}, to_place = 1, table.emptySlots.indexOf(to_place) != -1 (== 1) -
-                        while (!terminate && table.emptySlots.indexOf(to_place) != -1)
-                            to_place = rand_generator.nextInt(table.slotToCard.length);
-                    }
-                    keyPressed(to_place);
+    /**
+     * @return - true iff all the keys pressed so far were handled, so the table's token board shows them.
+     */
+    boolean keysHandled() {
+        return queueOfActions.isEmpty() && !handling;
+    }
 
-                }
+    /**
+     * @return - true iff the player thread has work to do now: key-presses to handle (not waiting for a verdict or for
+     * the table), or the verdict on his SET to act on. Never once the player is terminated.
+     */
+    boolean busy() {
+        if (terminate)
+            return false;
+        if (claiming || handling && state != PlayerState.Waiting)
+            return true;
+        return !queueOfActions.isEmpty() && state != PlayerState.Waiting && table.canPlay();
+    }
 
-            }
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
-            System.out.printf("AI thread of player %s has been terminated",id); System.out.println();
-        }, "computer-" + id);
-        aiThread.start();
+    /**
+     * Replaces the AI's strategy (before the game starts, or between key-presses).
+     *
+     * @param strategy - the strategy choosing the AI's key-presses.
+     */
+    public void setStrategy(AiStrategy strategy) {
+        this.strategy = strategy;
     }
 
     /**
@@ -297,6 +314,7 @@ public class Player implements Runnable {
         // TODO implement
         terminate = true;
         table.wakeUp();
+        unfreeze();
     }
 
     /**
@@ -305,51 +323,78 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(Integer slot) {
-
-        if (state == PlayerState.Waiting || !table.canPlay() || set_state != SetState.NotComplete || slot == null)
+        if (state == PlayerState.Waiting || frozen || !table.canPlay() || set_state != SetState.NotComplete || slot == null)
             ;
         else {
+            int epoch = table.epoch(); // the player thread drops the key-presses of an earlier epoch
+            int waiting = -1; // the key-presses waiting before this one, -1 if it wasn't queued
             if (state == PlayerState.Playing) {
                 if (dealer.tableHaveEmptySlots) {
                     if (table.emptySlots.contains(slot))
                         return;
                     else
-                        queueOfActions.offer(slot);
+                        waiting = queueOfActions.offer(slot, epoch);
                 } else
-                    queueOfActions.offer(slot);
+                    waiting = queueOfActions.offer(slot, epoch);
             } else if (state == PlayerState.PlayingAfterPunishment) {
                 if (dealer.tableHaveEmptySlots) {
                     if (table.emptySlots.contains(slot))
                         return;
                     else {
-                        if (mySet.size() == 3) {
-                            if (mySet.contains(slot))
-                                queueOfActions.offer(slot);
+                        if (table.tokenCount(id) == 3) {
+                            if (table.hasToken(id, slot))
+                                waiting = queueOfActions.offer(slot, epoch);
                             else
                                 return;
                         } else
-                            queueOfActions.offer(slot);
+                            waiting = queueOfActions.offer(slot, epoch);
                     }
                 } else {
-                    if (mySet.size() == 3) {
-                        if (mySet.contains(slot))
-                            queueOfActions.offer(slot);
+                    if (table.tokenCount(id) == 3) {
+                        if (table.hasToken(id, slot))
+                            waiting = queueOfActions.offer(slot, epoch);
                         else
                             return;
                     } else
-                        queueOfActions.offer(slot);
+                        waiting = queueOfActions.offer(slot, epoch);
                 }
             }
-            // Alert player that an action was inserted to his queue
-            try {
-                synchronized (queueOfActions) {
-                    _wakeUp();
-                }
-            } catch (InterruptedException e) { table.wakeUp();}
+            if (waiting != -1) {
+                InputLog log = dealer.inputLog;
+                if (log != null) // the key-presses queued, with their epoch, replay the same game (see InputReplay)
+                    log.record(id, slot, epoch);
+            }
+            // Alert player that an action was inserted to his queue (if it was empty he may be waiting for it)
+            if (waiting == 0)
+                actionInserted();
         }
         //}
     }
 
+    /**
+     * Queues a recorded key-press as it was queued when the game was recorded (called by the InputReplay thread only).
+     *
+     * @param slot  - the slot pressed.
+     * @param epoch - the table's epoch when it was pressed.
+     */
+    void replayKey(int slot, int epoch) {
+        if (queueOfActions.offer(slot, epoch) == 0)
+            actionInserted();
+    }
+
+    /**
+     * Alerts the player thread that an action was inserted to his queue (if it was empty he may be waiting for it).
+     */
+    private void actionInserted() {
+        actionsLock.lock();
+        try {
+            _wakeUp();
+        } catch (InterruptedException e) { table.wakeUp();}
+        finally {
+            actionsLock.unlock();
+        }
+    }
+
     /**
      * Award a point to a player and perform other related actions.
      *
@@ -362,19 +407,13 @@ public class Player implements Runnable {
 
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         score += 1;
+        GameJournal journal = table.journal;
+        if (journal != null)
+            journal.score(id, score);
         env.ui.setScore(id, score);
 
-        if (env.config.pointFreezeMillis != 0) {
-            // go into freeze penalty of 1 second && display penalty timer
-            try {
-                env.ui.setFreeze(id, env.config.pointFreezeMillis);
-                Thread.sleep(env.config.pointFreezeMillis);
-            } catch (InterruptedException e) {
-                System.out.printf("Thread player %s has been shutdown due to closing game window - in point()", id); System.out.println(); table.wakeUp();
-            }
-            // get out of freeze && stop display of penalty timer
-            env.ui.setFreeze(id, 0);
-        }
+        if (env.config.pointFreezeMillis != 0) // go into freeze of 1 second && display freeze timer, the dealer ends it
+            freeze(env.config.pointFreezeMillis);
 
         // change player.set_state back to SetState.NotComplete
         setSetState(SetState.NotComplete);
@@ -389,22 +428,8 @@ public class Player implements Runnable {
         // TODO implement
         //System.out.printf("player %s in penalty() method",id); System.out.println();
 
-        if (env.config.penaltyFreezeMillis != 0) {
-            // go into freeze penalty of 3 second && display penalty timer
-            long freeze = env.config.penaltyFreezeMillis;
-            while (freeze > 0 && !terminate) {
-                try {
-                    env.ui.setFreeze(id, freeze);
-                    Thread.sleep(FREEZE_PENALTY_INTERVAL);
-                    freeze -= FREEZE_PENALTY_INTERVAL;
-                } catch (InterruptedException e) {
-                    System.out.printf("Thread player %s has been shutdown due to closing game window - in penalty()", id); System.out.println();
-                    table.wakeUp(); break;
-                }
-            }
-            // get out of freeze && stop display of penalty timer
-            env.ui.setFreeze(id, 0);
-        }
+        if (env.config.penaltyFreezeMillis != 0) // go into freeze penalty of 3 seconds && display penalty timer, the dealer ends it
+            freeze(env.config.penaltyFreezeMillis);
 
         // change player.set_state back to SetState.NotComplete
         setSetState(SetState.NotComplete);
@@ -413,87 +438,95 @@ public class Player implements Runnable {
 
     public int score() { return score; }
 
-    // **added methods**
-
     /**
-     * Handling all token wise actions, who can be called from class; Dealer && Player, including removing and placing tokens
-     * while updating player's fields
+     * Freezes the player: his key-presses are ignored until the dealer unfreezes him (see FreezeWheel).
      *
-     * @param slot - The slot that the action occurs
+     * @param millis - the freeze time in milliseconds.
      */
-    public void handleTokenActions(Integer slot) {
+    private void freeze(long millis) {
+        frozen = true;
+        queueOfActions.clear(); // key-presses made before the verdict
+        env.ui.setFreeze(id, millis);
+        dealer.freeze(this, millis);
+    }
 
-        if (slot == null || table.slotToCard[slot] == null)
-            ;
-        else {
-            if (mySet.indexOf((Integer) slot) != -1) { // There is a token placed on 'slot' - we'll remove it
-                table.removeToken(id, slot);
-                mySet.remove((Integer) slot);
-                slotsToPlace.add(slot);
-            } else {
-                table.placeToken(id, slot);
-                mySet.add(slot);
-                slotsToPlace.remove((Integer) slot);
-            }
-        }
+    /**
+     * Shows the time left of the player's freeze (called by the dealer thread).
+     *
+     * @param millis - the freeze time left in milliseconds.
+     */
+    void showFreeze(long millis) {
+        env.ui.setFreeze(id, millis);
     }
 
     /**
-     * Clearing mySet: set of slots player has placed a token on
+     * Ends the player's freeze (called by the dealer thread).
      */
-    public void clearPlayerSet() {
-        mySet = new ArrayList<>();
+    void unfreeze() {
+        if (frozen) {
+            frozen = false;
+            env.ui.setFreeze(id, 0);
+        }
     }
 
     /**
-     * @param _state - State to assign to Player's state
+     * @return - true iff the player is frozen.
      */
-    public void setPlayerState(PlayerState _state) {
-        state = _state;
+    public boolean isFrozen() {
+        return frozen;
     }
 
+    // **added methods**
+
     /**
+     * Handling all token wise actions, who can be called from class; Dealer && Player, including removing and placing tokens
+     * on the table's token board
      *
-     * @param _set_state - SetState to assign to Player's SetState
+     * @param slot - The slot that the action occurs
      */
-    public void setSetState(SetState _set_state) {
-        set_state = _set_state;
+    public void handleTokenActions(Integer slot) {
+        handleTokenActions(slot, table.epoch());
     }
 
     /**
-     * @return Player's SET consist slots player has placed a token on
+     * Handling a token action of a key pressed in a dealing epoch: a token placed once the dealer has dealt since is
+     * taken back (see Table.placeToken), it was aimed at another card
+     *
+     * @param slot  - The slot that the action occurs
+     * @param epoch - The table's dealing epoch the key-press was made in
      */
-    public List<Integer> getMySet() {
-        return mySet;
+    void handleTokenActions(Integer slot, int epoch) {
+
+        if (slot == null || table.slotToCard[slot] == -1)
+            ;
+        else {
+            if (table.hasToken(id, slot)) // There is a token placed on 'slot' - we'll remove it
+                table.removeToken(id, slot);
+            else
+                table.placeToken(id, slot, epoch);
+        }
     }
 
     /**
-     * @return A clone of player's SET of slots player has placed a token on
+     * Clearing player's SET: removing the tokens he has placed from the table
      */
-    public List<Integer> clone() {
-        return (ArrayList<Integer>) ((ArrayList<Integer>) mySet).clone();
+    public void clearPlayerSet() {
+        table.removeTokensOf(id);
     }
 
     /**
-     * @param toRemove - A SET of slots to remove token's from
+     * @param _state - State to assign to Player's state
      */
-    public void removeTokensFromSlots(List<Integer> toRemove) {
-        for (Integer slot : toRemove) {
-            if (slot != null)
-                removeTokenFromSlot(slot);
-        }
-
+    public void setPlayerState(PlayerState _state) {
+        state = _state;
     }
 
     /**
-     * @param slot - A slot to remove tokens from: updating player.mySet && player.slotsToPlace && calling table to remove UI
+     *
+     * @param _set_state - SetState to assign to Player's SetState
      */
-    public void removeTokenFromSlot(int slot) {
-        if (mySet.indexOf((Integer) slot) != -1) {
-            mySet.remove((Integer) slot);
-            slotsToPlace.add(slot);
-            table.removeToken(id, slot);
-        }
+    public void setSetState(SetState _set_state) {
+        set_state = _set_state;
     }
 
     /**
@@ -505,46 +538,38 @@ public class Player implements Runnable {
 
     /**
      * @throws InterruptedException
-     * Call wait on queue of actions whilst there are no actions inserted to it
+     * Wait for an action to be inserted to queue of actions (called holding actionsLock)
      */
     public void _wait() throws InterruptedException {
-        queueOfActions.wait();
+        actionInserted.await();
     }
 
     /**
      * @throws InterruptedException
-     * Notify queue of action that an action has inserted to it
+     * Notify queue of action that an action has inserted to it (called holding actionsLock)
      */
     public void _wakeUp() throws InterruptedException {
-        queueOfActions.notify();
+        actionInserted.signal();
     }
 
     /**
      *
      * @param state - Player need to assign his state to it:
-     *              PlayerState.Playing if SET of player is Legal
+     *              PlayerState.Playing if SET of player is Legal (or was discarded)
      *              PlayerState.PlayingAfterPunishment if SET of player is Illegal
-     * @throws InterruptedException
-     * Will be called only from dealer.checkSet() after dealer has finished checking player's SET
+     * Called by the dealer after he has finished checking player's SET: hands the verdict to this player only, in O(1)
      */
-    public void _notify(PlayerState state) throws InterruptedException {
-        synchronized (obj) {
-            setPlayerState(state);
-            obj.notify();
-        }
+    public void _notify(PlayerState state) {
+        setPlayerState(state);
+        _unpark();
     }
 
     /**
-     * @throws InterruptedException
-     * Will be called only at the end of dealer.placeCardsOnTable(), in order to notify all player's that they can return playing
+     * Wake player up if he is waiting for a verdict (he checks his state and keeps waiting if there is none yet)
      */
-    public void _notifyAll() throws InterruptedException {
-        synchronized (obj) {
-            obj.notifyAll();
-        }
-    }
-
-    public Object getObj(){
-        return obj;
+    public void _unpark() {
+        Thread thread = playerThread;
+        if (thread != null)
+            LockSupport.unpark(thread);
     }
 }
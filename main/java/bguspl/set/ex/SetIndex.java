@@ -0,0 +1,191 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps the legal sets among a changing collection of cards up to date.
+ * Adding or removing a card only looks at the sets containing that card (O(n) completion lookups for sets of 3
+ * cards; sets of 2 cards have nothing to complete, so each card in the index is tested with the new one), and the sets
+ * are published as an immutable snapshot so readers never lock.
+ *
+ * @inv present[c] iff members[position[c]] == c, for every card c
+ */
+public class SetIndex {
+
+    /**
+     * Used for finding the card completing a set.
+     */
+    private final Util util;
+
+    /**
+     * The number of cards in a set.
+     */
+    private final int setSize;
+
+    /**
+     * present[card] is true iff the card is in the index.
+     */
+    private final boolean[] present;
+
+    /**
+     * The cards in the index (in no particular order), the first size entries are used.
+     */
+    private final int[] members;
+
+    /**
+     * The index of each card in members.
+     */
+    private final int[] position;
+
+    /**
+     * The number of cards in the index.
+     */
+    private int size;
+
+    /**
+     * The legal sets among the cards in the index, each one sorted by card id. Replaced (never modified) on update.
+     */
+    private volatile int[][] sets;
+
+    /**
+     * Scratch arrays for choosing the cards to complete.
+     */
+    private final int[] chosen;
+    private final int[] combination;
+
+    /**
+     * @param util     - used for finding the card completing a set.
+     * @param setSize  - the number of cards in a set.
+     * @param deckSize - the number of card ids.
+     */
+    public SetIndex(Util util, int setSize, int deckSize) {
+        this.util = util;
+        this.setSize = setSize;
+        present = new boolean[deckSize];
+        members = new int[deckSize];
+        position = new int[deckSize];
+        size = 0;
+        sets = new int[0][];
+        chosen = new int[Math.max(setSize - 1, 0)];
+        combination = new int[Math.max(setSize - 2, 0)];
+    }
+
+    /**
+     * Adds a card to the index, along with every set it completes.
+     *
+     * @param card - the card to add.
+     * @return - the number of new sets.
+     */
+    public synchronized int add(int card) {
+        if (present[card]) return 0;
+
+        int[][] found = new int[0][];
+        int r = setSize - 2; // the other cards to choose, the last one is completed
+        if (r == 0) { // a set of 2 cards: the new card and any one in the index
+            found = new int[size][];
+            int pairs = 0;
+            for (int i = 0; i < size; ++i) {
+                int[] set = members[i] < card ? new int[]{members[i], card} : new int[]{card, members[i]};
+                if (util.testSet(set))
+                    found[pairs++] = set;
+            }
+            found = Arrays.copyOf(found, pairs);
+        } else if (r >= 1 && size >= r + 1) {
+            for (int i = 0; i < r; ++i)
+                combination[i] = i;
+
+            while (combination[r - 1] < size) {
+                int max = -1;
+                for (int i = 0; i < r; ++i) {
+                    chosen[i] = members[combination[i]];
+                    max = Math.max(max, chosen[i]);
+                }
+                chosen[r] = card;
+
+                // each set is found once - when the completing card is the largest of the other cards
+                int last = util.completeSet(chosen);
+                if (last > max && last != card && present[last]) {
+                    int[] set = Arrays.copyOf(chosen, setSize);
+                    set[setSize - 1] = last;
+                    Arrays.sort(set);
+                    found = Arrays.copyOf(found, found.length + 1);
+                    found[found.length - 1] = set;
+                }
+
+                // generate next combination in lexicographic order
+                int t = r - 1;
+                while (t != 0 && combination[t] == size - r + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            }
+        }
+
+        present[card] = true;
+        position[card] = size;
+        members[size++] = card;
+
+        if (found.length > 0) {
+            int[][] updated = Arrays.copyOf(sets, sets.length + found.length);
+            System.arraycopy(found, 0, updated, sets.length, found.length);
+            sets = updated;
+        }
+        return found.length;
+    }
+
+    /**
+     * Removes a card from the index, along with every set containing it.
+     *
+     * @param card - the card to remove.
+     * @return - the number of sets removed.
+     */
+    public synchronized int remove(int card) {
+        if (!present[card]) return 0;
+
+        present[card] = false;
+        int last = members[--size];
+        members[position[card]] = last;
+        position[last] = position[card];
+
+        int[][] current = sets;
+        int[][] updated = new int[current.length][];
+        int kept = 0;
+        for (int[] set : current) {
+            if (Arrays.binarySearch(set, card) < 0)
+                updated[kept++] = set;
+        }
+        if (kept < current.length)
+            sets = Arrays.copyOf(updated, kept);
+        return current.length - kept;
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - true iff the card is in the index.
+     */
+    public synchronized boolean contains(int card) {
+        return present[card];
+    }
+
+    /**
+     * @return - the number of legal sets among the cards in the index.
+     */
+    public int count() {
+        return sets.length;
+    }
+
+    /**
+     * @return - true iff there are no legal sets among the cards in the index.
+     */
+    public boolean isEmpty() {
+        return sets.length == 0;
+    }
+
+    /**
+     * @return - a snapshot of the legal sets among the cards in the index (must not be modified).
+     */
+    public int[][] sets() {
+        return sets;
+    }
+}
@@ -1,8 +1,13 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameJournal;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -19,20 +24,20 @@ public class Table {
     public final Env env; // public for tests
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * Mapping between a slot and the card placed in it (-1 if none).
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    protected final int[] slotToCard; // card per slot (if any)
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * Mapping between a card and the slot it is in (-1 if none).
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    protected final int[] cardToSlot; // slot per card (if any)
 
     // added fields
     /**
      * Represents the current empty slots on table (i.e. slots without a card)
      */
-    protected List<Integer> emptySlots; // after CTR: {0,1,2,3,4,5,6,7,8,9,10,11} -> after first placement of all cards on table: {} -> after a player has found a legal set and have them removed from table: {8,2,0}
+    protected final FreeSlots emptySlots; // after CTR: {0,1,2,3,4,5,6,7,8,9,10,11} -> after first placement of all cards on table: {} -> after a player has found a legal set and have them removed from table: {0,2,8}
 
     /**
      * Slot lock who permits only one player at a time to place or remove a token while keeping fairness of the game
@@ -40,21 +45,64 @@ public class Table {
     protected ReentrantLock fairSlotsLock;
 
     /**
-     * Indicator whether player can play on table;
-     * true if player is allowed to place\remove token freely
-     * false if dealer is placing\removing cards from table thus player isn't allowed to play
+     * The dealing epoch, incremented whenever the dealer opens (gameOn) or closes (gameOff) the table;
+     * odd if player is allowed to place\remove token freely
+     * even if dealer is placing\removing cards from table thus player isn't allowed to play
      */
-    protected volatile boolean canPlay = false;
+    private final AtomicInteger epoch = new AtomicInteger();
+
+    /**
+     * Incremented by wakeUp(), to release the waiting players without opening the table (e.g. on termination)
+     */
+    private volatile int wakeUps;
+
+    /**
+     * The legal sets among the cards currently on the table, updated as cards are placed and removed
+     */
+    protected final SetIndex setsOnTable;
+
+    /**
+     * Picks the hints (seeded from the game's seed, see Env.random)
+     */
+    private final Random random;
+    private static final long RANDOM_STREAM = 2;
+
+    /**
+     * The threads parked in _wait() until the table opens; each one is unparked once (and removed) when it does
+     */
+    private final Set<Thread> waiters = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The token board by slot: bit (player % 64) of slotTokens[slot * playerWords + player / 64] is set iff the player
+     * has a token on the slot
+     */
+    private final AtomicLongArray slotTokens;
+
+    /**
+     * The token board by player: bit (slot % 64) of playerTokens[player * slotWords + slot / 64] is set iff the player
+     * has a token on the slot
+     */
+    private final AtomicLongArray playerTokens;
+
+    /**
+     * The number of 64 bit words in a mask of players and in a mask of slots
+     */
+    private final int playerWords, slotWords;
+
+    /**
+     * The game's event journal, set by the dealer (null if there is none)
+     */
+    volatile GameJournal journal;
 
 
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (-1 if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (-1 if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard; // slotToCard.size()==12
@@ -63,19 +111,21 @@ public class Table {
         // added to CTR
 
         // #1 Initialize added fields
-        emptySlots = new ArrayList<>();
+        emptySlots = new FreeSlots(slotToCard.length);
         fairSlotsLock = new ReentrantLock(true);
+        setsOnTable = new SetIndex(env.util, env.config.featureSize, cardToSlot.length);
+        random = env.random(RANDOM_STREAM);
+        playerWords = (env.config.players + 63) / 64;
+        slotWords = (slotToCard.length + 63) / 64;
+        slotTokens = new AtomicLongArray(slotToCard.length * playerWords);
+        playerTokens = new AtomicLongArray(env.config.players * slotWords);
 
-        // #2 Initialize all values to null
-        // slotToCard[i] == null means that in the ith slot there is no card placed
-        for (int i = 0; i < slotToCard.length; ++i) {
-            slotToCard[i] = null;
-            emptySlots.add(i);
-        }
+        // #2 Initialize all values to -1
+        // slotToCard[i] == -1 means that in the ith slot there is no card placed
+        Arrays.fill(slotToCard, -1);
 
-        // cardToSlot[j] == null means that the jth card isn't placed in any slot on grid
-        for (int j = 0; j < cardToSlot.length; ++j)
-            cardToSlot[j] = null;
+        // cardToSlot[j] == -1 means that the jth card isn't placed in any slot on grid
+        Arrays.fill(cardToSlot, -1);
 
     }
 
@@ -86,33 +136,38 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, new int[env.config.tableSize], new int[env.config.deckSize]);
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        for (int[] set : setsOnTable.sets()) {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
             List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
             System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+        }
     }
 
+    /**
+     * @return - true iff there is a legal set among the cards on the table.
+     */
     public boolean hasClue() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        return env.util.findSets(deck,Integer.MAX_VALUE).size() > 0;
+        return !setsOnTable.isEmpty();
     }
 
+    /**
+     * @return - the sorted slots of a random legal set on the table, or null if there is none.
+     */
     public Integer[] getHint() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
+        int[][] sets = setsOnTable.sets();
+        if (sets.length == 0)
+            return null;
+
         Integer[] ans = new Integer[3];
-        List<int[]> hints_list = env.util.findSets(deck,Integer.MAX_VALUE);
-        Random rand = new Random();
-        int[] hint = hints_list.get(rand.nextInt(hints_list.size())); // pick a random hint for a SET that currently placed on table
+        int[] hint = sets[random.nextInt(sets.length)]; // pick a random hint for a SET that currently placed on table
         for (int h = 0; h < hint.length; ++h)
             ans[h] = cardToSlot[hint[h]];
 
@@ -127,8 +182,8 @@ public class Table {
      */
     public int countCards() {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int card : slotToCard)
+            if (card != -1)
                 ++cards;
         return cards;
     }
@@ -141,42 +196,103 @@ public class Table {
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+        if (env.config.tableDelayMillis > 0) {
+            try {
+                env.clock.sleep(env.config.tableDelayMillis);
+            } catch (InterruptedException ignored) {}
+        }
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+        putCard(card, slot);
         env.ui.placeCard(card, slot);
 
-        // Dealer himself in placeCardsOnTable() removes the emptySlot from table.emptySlots
-
         // TODO implement
     }
 
+    /**
+     * Places cards on the table, all at once: the table is updated before the UI is, and the UI gets a single update
+     * (which it may animate on its own time, the game doesn't wait for it).
+     * @param cards - the card ids to place.
+     * @param slots - the slots in which the cards should be placed, slots[i] for cards[i].
+     *
+     * @post - the cards placed are on the table, in the assigned slots.
+     */
+    public void placeCards(int[] cards, int[] slots) {
+        for (int i = 0; i < cards.length; ++i)
+            putCard(cards[i], slots[i]);
+        if (cards.length > 0)
+            env.ui.placeCards(cards, slots);
+    }
+
+    /**
+     * Updates the mappings (and the sets on table) with a card placed in a slot.
+     */
+    private void putCard(int card, int slot) {
+        if (slotToCard[slot] != -1) { // replacing a card, forget the old one
+            cardToSlot[slotToCard[slot]] = -1;
+            setsOnTable.remove(slotToCard[slot]);
+        }
+        cardToSlot[card] = slot;
+        slotToCard[slot] = card;
+        emptySlots.remove(slot);
+        setsOnTable.add(card);
+        GameJournal journal = this.journal;
+        if (journal != null)
+            journal.deal(slot, card);
+    }
+
     /**
      * Removes a card from a grid slot on the table.
      * @param slot - the slot from which to remove the card.
      */
-    public void removeCard(Integer slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+    public void removeCard(int slot) {
+        if (env.config.tableDelayMillis > 0) {
+            try {
+                env.clock.sleep(env.config.tableDelayMillis);
+            } catch (InterruptedException ignored) {}
+        }
 
         // TODO implement
 
-        // update mapping arrays
-        if (slotToCard[slot] != null) {
-            int card =  slotToCard[slot];
-            cardToSlot[card] = null;
-            slotToCard[slot] = null;
-            // update UI
+        // update mapping arrays, and the UI
+        if (takeCard(slot) != -1)
             env.ui.removeCard(slot);
+    }
+
+    /**
+     * Removes cards from the table, all at once: the table is updated before the UI is, and the UI gets a single update
+     * (which it may animate on its own time, the game doesn't wait for it).
+     * @param slots - the slots from which to remove the cards.
+     * @return - the cards removed, cards[i] from slots[i] (-1 if it was empty).
+     */
+    public int[] removeCards(int[] slots) {
+        int[] cards = new int[slots.length];
+        int removed = 0;
+        for (int i = 0; i < slots.length; ++i)
+            if ((cards[i] = takeCard(slots[i])) != -1)
+                ++removed;
+        if (removed > 0)
+            env.ui.removeCards(slots);
+        return cards;
+    }
+
+    /**
+     * Updates the mappings (and the sets on table) with the card in a slot removed.
+     * @return - the card removed, -1 if the slot was empty.
+     */
+    private int takeCard(int slot) {
+        int card = slotToCard[slot];
+        if (card != -1) {
+            cardToSlot[card] = -1;
+            slotToCard[slot] = -1;
+            setsOnTable.remove(card);
+            GameJournal journal = this.journal;
+            if (journal != null)
+                journal.remove(slot, card);
         }
 
-        // update empty Slots List
-        if (!emptySlots.contains(slot))
-            emptySlots.add(slot);
+        // update empty Slots (a no-op if it was empty already)
+        emptySlots.add(slot);
+        return card;
     }
 
     /**
@@ -185,8 +301,33 @@ public class Table {
      * @param slot   - the slot on which to place the token.
      */
     public void placeToken(int player, int slot) {
-        // TODO implement
-        env.ui.placeToken(player,slot);
+        // the player's mask first and the slot's last (the reverse of removing), so a concurrent removal of the slot's
+        // tokens by the dealer leaves the two masks agreeing
+        if (setBit(playerTokens, player * slotWords + (slot >> 6), slot)) {
+            setBit(slotTokens, slot * playerWords + (player >> 6), player);
+            GameJournal journal = this.journal;
+            if (journal != null)
+                journal.token(player, slot);
+            env.ui.placeToken(player, slot);
+        }
+    }
+
+    /**
+     * Places a player token on a grid slot, for a key pressed in a dealing epoch. The epoch is checked after the token
+     * is placed, and the token taken back if the dealer has closed the table since: the dealer closes it before
+     * removing tokens, so a token that landed after the dealer removed the slot's tokens (on a card dealt since) sees
+     * the new epoch.
+     * @param player - the player the token belongs to.
+     * @param slot   - the slot on which to place the token.
+     * @param epoch  - the dealing epoch the key was pressed in.
+     * @return       - true iff the token was placed and kept.
+     */
+    public boolean placeToken(int player, int slot, int epoch) {
+        placeToken(player, slot);
+        if (this.epoch.get() == epoch)
+            return true;
+        removeToken(player, slot);
+        return false;
     }
 
     /**
@@ -196,55 +337,254 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        // TODO implement
-        try {
-            env.ui.removeToken(player, slot);
-            return true;
-        } catch (Exception e) {
+        if (!clearBit(slotTokens, slot * playerWords + (player >> 6), player))
             return false;
-        }
+        clearBit(playerTokens, player * slotWords + (slot >> 6), slot);
+        GameJournal journal = this.journal;
+        if (journal != null)
+            journal.untoken(player, slot);
+        env.ui.removeToken(player, slot);
+        return true;
     }
 
     // added methods
 
+    /**
+     * @param player - a player id
+     * @param slot   - a slot
+     * @return If player has a token on slot (a single read)
+     */
+    public boolean hasToken(int player, int slot) {
+        return (playerTokens.get(player * slotWords + (slot >> 6)) & (1L << slot)) != 0;
+    }
+
+    /**
+     * @param player - a player id
+     * @return The number of tokens player has on table
+     */
+    public int tokenCount(int player) {
+        int count = 0;
+        for (int w = 0; w < slotWords; ++w)
+            count += Long.bitCount(playerTokens.get(player * slotWords + w));
+        return count;
+    }
+
+    /**
+     * @param player - a player id
+     * @return The slots player has a token on, in increasing order
+     */
+    public int[] tokens(int player) {
+        return bits(playerTokens, player * slotWords, slotWords);
+    }
+
+    /**
+     * @param slot - a slot
+     * @return The players who have a token on slot, in increasing order (a single read for up to 64 players)
+     */
+    public int[] playersOn(int slot) {
+        return bits(slotTokens, slot * playerWords, playerWords);
+    }
+
+    /**
+     * Removes all tokens from a slot.
+     * @param slot - the slot from which to remove the tokens.
+     */
     public void removeTokens(int slot) {
-        env.ui.removeTokens(slot);
+        removeTokens(new int[]{slot});
+    }
+
+    /**
+     * Removes all tokens from some slots: each slot's players are taken in one atomic swap, and each of those players
+     * loses the slots in one mask operation.
+     * @param slots - the slots from which to remove the tokens.
+     */
+    public void removeTokens(int[] slots) {
+        long[] slotMask = new long[slotWords];
+        long[] owners = new long[playerWords];
+        for (int slot : slots) {
+            slotMask[slot >> 6] |= 1L << slot;
+            for (int w = 0; w < playerWords; ++w)
+                owners[w] |= slotTokens.getAndSet(slot * playerWords + w, 0);
+        }
+        for (int w = 0; w < playerWords; ++w) {
+            for (long rest = owners[w]; rest != 0; rest &= rest - 1) {
+                int player = w * 64 + Long.numberOfTrailingZeros(rest);
+                for (int s = 0; s < slotWords; ++s)
+                    if (slotMask[s] != 0)
+                        clearBits(playerTokens, player * slotWords + s, slotMask[s]);
+            }
+        }
+        GameJournal journal = this.journal;
+        for (int slot : slots) {
+            if (journal != null)
+                journal.clear(slot);
+            env.ui.removeTokens(slot);
+        }
+    }
+
+    /**
+     * Removes all tokens of a player from the table.
+     * @param player - the player the tokens belong to.
+     */
+    public void removeTokensOf(int player) {
+        for (int slot = 0; slot < slotToCard.length; ++slot)
+            removeToken(player, slot);
+    }
+
+    /**
+     * Removes all tokens from the table.
+     */
+    public void removeAllTokens() {
+        for (int i = 0; i < slotTokens.length(); ++i)
+            slotTokens.set(i, 0);
+        for (int i = 0; i < playerTokens.length(); ++i)
+            playerTokens.set(i, 0);
+        GameJournal journal = this.journal;
+        if (journal != null)
+            journal.clear(-1);
+        env.ui.removeTokens();
+    }
+
+    /**
+     * Sets a bit of a word with a CAS.
+     * @return True iff the bit was clear
+     */
+    private static boolean setBit(AtomicLongArray words, int index, int bit) {
+        long mask = 1L << bit;
+        long word;
+        do {
+            word = words.get(index);
+            if ((word & mask) != 0)
+                return false;
+        } while (!words.compareAndSet(index, word, word | mask));
+        return true;
+    }
+
+    /**
+     * Clears a bit of a word with a CAS.
+     * @return True iff the bit was set
+     */
+    private static boolean clearBit(AtomicLongArray words, int index, int bit) {
+        long mask = 1L << bit;
+        long word;
+        do {
+            word = words.get(index);
+            if ((word & mask) == 0)
+                return false;
+        } while (!words.compareAndSet(index, word, word & ~mask));
+        return true;
+    }
+
+    /**
+     * Clears bits of a word with a CAS.
+     */
+    private static void clearBits(AtomicLongArray words, int index, long mask) {
+        long word;
+        do {
+            word = words.get(index);
+        } while ((word & mask) != 0 && !words.compareAndSet(index, word, word & ~mask));
+    }
+
+    /**
+     * @return The indices of the bits set in words[from .. from + count)
+     */
+    private static int[] bits(AtomicLongArray words, int from, int count) {
+        long[] snapshot = new long[count];
+        int size = 0;
+        for (int w = 0; w < count; ++w) {
+            snapshot[w] = words.get(from + w);
+            size += Long.bitCount(snapshot[w]);
+        }
+        int[] bits = new int[size];
+        int i = 0;
+        for (int w = 0; w < count; ++w)
+            for (long rest = snapshot[w]; rest != 0; rest &= rest - 1)
+                bits[i++] = w * 64 + Long.numberOfTrailingZeros(rest);
+        return bits;
     }
 
     /**
      * @return If player's can return playing and placing tokens
      */
     public boolean canPlay() {
-        return canPlay;
+        return isOpen(epoch.get());
+    }
+
+    /**
+     * @return The current dealing epoch; token actions made in an earlier epoch are stale (the cards may have changed)
+     */
+    public int epoch() {
+        return epoch.get();
+    }
+
+    /**
+     * @param epoch - a dealing epoch
+     * @return If player's can play during it
+     */
+    public static boolean isOpen(int epoch) {
+        return (epoch & 1) == 1;
     }
 
     /**
-     * Dealer is informing that playing can be resumed, it means dealer has finished placing cards on table
+     * Dealer is informing that playing can be resumed, it means dealer has finished placing cards on table;
+     * starts a new epoch and wakes up the players waiting for it
      */
     public void gameOn() {
-        canPlay = true;
+        epoch.getAndUpdate(e -> isOpen(e) ? e : e + 1);
+        release();
     }
 
     /**
      * Dealer is informing that paying need to be paused, it means dealer has started removing cards from table
      */
     public void gameOff() {
-        canPlay = false;
+        epoch.getAndUpdate(e -> isOpen(e) ? e + 1 : e);
     }
 
     /**
-     * Notify all player's waiting on table to wake-up, it means they can resume playing
+     * Wake up all player's waiting on table without opening it (they re-check whether they can play or should stop)
      */
-    public synchronized void wakeUp() {
-        notifyAll();
+    public void wakeUp() {
+        ++wakeUps; // only has to change, so a lost update doesn't matter
+        release();
     }
 
     /**
      * @throws InterruptedException
-     * Inform player's to stop playing and wait to table's command in order to resume playing
+     * Inform player's to stop playing and wait to table's command in order to resume playing;
+     * returns once the table opens (or on wakeUp())
      */
-    public synchronized void _wait() throws InterruptedException {
-        wait();
+    public void _wait() throws InterruptedException {
+        int seenWakeUps = wakeUps;
+        int seenEpoch = epoch.get();
+        if (isOpen(seenEpoch))
+            return;
+
+        Thread current = Thread.currentThread();
+        try {
+            while (true) {
+                waiters.add(current);
+                // checked after registering, so a gameOn() in between can't be missed; any change of the epoch means
+                // the table has opened since (even if the dealer has already closed it again)
+                if (epoch.get() != seenEpoch || wakeUps != seenWakeUps)
+                    return;
+                LockSupport.park(this);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        } finally {
+            waiters.remove(current);
+        }
+    }
+
+    /**
+     * Unparks each player waiting on table once
+     */
+    private void release() {
+        for (Thread waiter : waiters) {
+            if (waiters.remove(waiter))
+                LockSupport.unpark(waiter);
+        }
     }
 
 }
@@ -0,0 +1,220 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameJournalTest {
+
+    @TempDir
+    Path dir;
+
+    String name;
+    VirtualClock clock;
+
+    @BeforeEach
+    void setUp() {
+        name = dir.resolve("game").toString();
+        clock = new VirtualClock();
+    }
+
+    /**
+     * @return - a journal of segments of 3 records: a header and 2 events.
+     */
+    private GameJournal smallJournal() throws IOException {
+        return new GameJournal(name, 42, clock, 3 * GameJournal.RECORD_BYTES, 1000);
+    }
+
+    /**
+     * Journals a card dealt, a token placed and removed, and the card removed, a second apart.
+     */
+    private void journalAToken() throws IOException {
+        GameJournal journal = smallJournal();
+        journal.deal(1, 7);
+        clock.advanceTo(1_000_000_000L);
+        journal.token(0, 1);
+        clock.advanceTo(2_000_000_000L);
+        journal.untoken(0, 1);
+        clock.advanceTo(3_000_000_000L);
+        journal.remove(1, 7);
+        journal.close();
+        assertEquals(4, journal.size());
+    }
+
+    @Test
+    void read_ReturnsTheRecordsAcrossSegments() throws IOException {
+        journalAToken();
+
+        List<GameJournal.Record> records = GameJournal.read(name, null);
+        assertEquals(42, GameJournal.readSeed(name));
+        assertTrue(Files.exists(GameJournal.segmentPath(name, 1)));
+        assertEquals(4, records.size());
+        assertEquals(GameJournal.Type.DEAL, records.get(0).type);
+        assertEquals(1, records.get(0).a);
+        assertEquals(7, records.get(0).b);
+        assertEquals(GameJournal.Type.TOKEN, records.get(1).type);
+        assertEquals(1_000_000_000L, records.get(1).time);
+        assertEquals(GameJournal.Type.UNTOKEN, records.get(2).type);
+        assertEquals(GameJournal.Type.REMOVE, records.get(3).type);
+        assertEquals(3, records.get(3).index);
+        assertEquals(3_000_000_000L, records.get(3).time);
+    }
+
+    @Test
+    void read_SkipsATornRecord() throws IOException {
+        journalAToken();
+
+        // a record written in part (e.g. when the game crashed) is skipped
+        Path second = GameJournal.segmentPath(name, 1);
+        byte[] bytes = Files.readAllBytes(second);
+        bytes[GameJournal.RECORD_BYTES + 20] ^= 1;
+        Files.write(second, bytes);
+        long[] skipped = new long[1];
+        List<GameJournal.Record> records = GameJournal.read(name, skipped);
+        assertEquals(3, records.size());
+        assertEquals(1, skipped[0]);
+        assertEquals(GameJournal.Type.REMOVE, records.get(2).type);
+    }
+
+    /**
+     * Blanks a record of the small journal, as if it was dropped.
+     */
+    private void blank(long index) throws IOException {
+        Path path = GameJournal.segmentPath(name, (int) (index / 2));
+        byte[] bytes = Files.readAllBytes(path);
+        int at = (int) (index % 2 + 1) * GameJournal.RECORD_BYTES;
+        Arrays.fill(bytes, at, at + GameJournal.RECORD_BYTES, (byte) 0);
+        Files.write(path, bytes);
+    }
+
+    @Test
+    void read_CountsTheRecordsMissingBeforeTheLastOne() throws IOException {
+        journalAToken();
+        blank(1);
+        blank(3); // the last one: can't be told from the end of the journal
+
+        long[] skipped = new long[2];
+        List<GameJournal.Record> records = GameJournal.read(name, skipped);
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(1).index);
+        assertEquals(0, skipped[0]);
+        assertEquals(1, skipped[1]);
+    }
+
+    @Test
+    void read_RejectsAFileThatIsNotAJournal() throws IOException {
+        Files.write(GameJournal.segmentPath(name, 0), new byte[4 * GameJournal.RECORD_BYTES]);
+        assertThrows(IOException.class, () -> GameJournal.read(name, null));
+        assertThrows(IOException.class, () -> GameJournal.readSeed(name));
+    }
+
+    @Test
+    void append_DropsTheRecordsOfASegmentNotMappedYet() throws IOException {
+        // the journal's thread won't map more segments for a minute
+        GameJournal journal = new GameJournal(name, 42, clock, 3 * GameJournal.RECORD_BYTES, 60_000);
+        for (int slot = 0; slot < 6; ++slot)
+            journal.deal(slot, slot);
+        journal.close();
+
+        // the first two segments are mapped up front, the records of the third are dropped (and not torn)
+        assertEquals(6, journal.size());
+        assertEquals(2, journal.dropped());
+        long[] skipped = new long[1];
+        List<GameJournal.Record> records = GameJournal.read(name, skipped);
+        assertEquals(4, records.size());
+        assertEquals(0, skipped[0]);
+        assertFalse(Files.exists(GameJournal.segmentPath(name, 2)));
+    }
+
+    @Test
+    void flusher_MapsAheadByTheAppendRate() throws IOException, InterruptedException {
+        // segments of 9 records, the first two mapped up front
+        GameJournal journal = new GameJournal(name, 42, clock, 10 * GameJournal.RECORD_BYTES, 200);
+        assertEquals(2, journal.mapped());
+        for (int record = 0; record < 9; ++record)
+            journal.score(0, record);
+
+        // 9 records in an interval: the journal's thread maps ahead for 18 more (a quiet journal is kept half a segment ahead)
+        for (int i = 0; i < 5000 && journal.mapped() < 4; ++i)
+            Thread.sleep(1);
+        assertEquals(4, journal.mapped());
+        for (int record = 9; record < 27; ++record)
+            journal.score(0, record);
+        journal.close();
+        assertEquals(0, journal.dropped());
+        assertEquals(27, GameJournal.read(name, null).size());
+    }
+
+    @Test
+    void claim_TakesARecordForEveryThreeSlots() throws IOException {
+        GameJournal journal = smallJournal();
+        journal.claim(2, new int[]{0, 4, 5, 9});
+        journal.close();
+
+        List<GameJournal.Record> records = GameJournal.read(name, null);
+        assertEquals(2, records.size());
+        assertEquals(GameJournal.Type.CLAIM, records.get(0).type);
+        assertArrayEquals(new int[]{2, 0, 4, 5}, new int[]{records.get(0).a, records.get(0).b, records.get(0).c, records.get(0).d});
+        assertEquals(GameJournal.Type.CLAIM_MORE, records.get(1).type);
+        assertArrayEquals(new int[]{2, 9, -1, -1}, new int[]{records.get(1).a, records.get(1).b, records.get(1).c, records.get(1).d});
+    }
+
+    @Test
+    void journalReader_DescribesTheEvents() {
+        long second = 1_000_000_000L;
+        assertEquals("card 7 dealt to slot 1",
+                describe(new GameJournal.Record(0, GameJournal.Type.DEAL, 0, 1, 7, 0, 0)));
+        assertEquals("player 1 claims slots 0 4 5",
+                describe(new GameJournal.Record(1, GameJournal.Type.CLAIM, second, 0, 0, 4, 5)));
+        assertEquals("   ... and slots 9",
+                describe(new GameJournal.Record(2, GameJournal.Type.CLAIM_MORE, second, 0, 9, -1, -1)).substring(8));
+        assertEquals("player 2's claim is illegal",
+                describe(new GameJournal.Record(3, GameJournal.Type.VERDICT, second, 1, GameJournal.ILLEGAL, 0, 0)));
+        assertEquals("all tokens removed",
+                describe(new GameJournal.Record(4, GameJournal.Type.CLEAR, second, -1, 0, 0, 0)));
+        assertTrue(JournalReader.describe(new GameJournal.Record(5, GameJournal.Type.SCORE, second + second / 2, 0, 3, 0, 0))
+                .matches(" *1.500 player 1 scores 3"));
+    }
+
+    /**
+     * @return - the description of a record, without its time.
+     */
+    private static String describe(GameJournal.Record record) {
+        return JournalReader.describe(record).substring(11);
+    }
+
+    @Test
+    void journalReader_PrintsTheJournal() throws IOException {
+        journalAToken();
+        Path second = GameJournal.segmentPath(name, 1);
+        byte[] bytes = Files.readAllBytes(second);
+        bytes[GameJournal.RECORD_BYTES + 20] ^= 1;
+        Files.write(second, bytes);
+        blank(1);
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true));
+        try {
+            JournalReader.main(new String[]{name});
+        } finally {
+            System.setOut(out);
+        }
+        String[] lines = printed.toString().split("\\R");
+        assertEquals("# journal " + name + ", seed 42, 2 records, 1 torn records skipped, 1 records missing (dropped, the"
+                + " journal has gaps)", lines[0]);
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].endsWith("card 7 dealt to slot 1"));
+        assertTrue(lines[2].endsWith("card 7 removed from slot 1"));
+    }
+}
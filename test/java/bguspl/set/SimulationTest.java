@@ -0,0 +1,75 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Runs a game of 4 computer players pressing at random, on 27 cards and a virtual clock.
+     *
+     * @param settings - more configuration properties, in pairs of a key and a value.
+     */
+    private Simulation.GameStats runGame(String... settings) throws InterruptedException {
+        Properties properties = new Properties();
+        properties.put("FeatureCount", "3");
+        properties.put("ComputerPlayers", "4");
+        properties.put("ComputerStrategy", "random");
+        properties.put("TurnTimeoutSeconds", "10");
+        properties.put("TurnTimeoutWarningSeconds", "2");
+        properties.put("RandomSeed", "7");
+        for (int i = 0; i < settings.length; i += 2)
+            properties.put(settings[i], settings[i + 1]);
+        Simulation.headless(properties, true);
+        Logger logger = Logger.getLogger("SimulationTest");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, properties);
+        return Simulation.runGame(logger, config, new UtilImpl(config), new VirtualClock(),
+                task -> new Thread(task).start(), "dealer");
+    }
+
+    /**
+     * @return - the verdicts in a journal, each one as its time, player and verdict.
+     */
+    private static List<String> verdicts(String journal) throws IOException {
+        List<String> verdicts = new ArrayList<>();
+        for (GameJournal.Record record : GameJournal.read(journal, null))
+            if (record.type == GameJournal.Type.VERDICT)
+                verdicts.add(record.time + " " + record.a + " " + record.b);
+        return verdicts;
+    }
+
+    @Test
+    void replay_GivesTheSameVerdictsAndScores() throws InterruptedException, IOException {
+        String keys = dir.resolve("keys.log").toString();
+        String recorded = dir.resolve("recorded").toString(), replayed = dir.resolve("replayed").toString();
+
+        Simulation.GameStats record = runGame("InputLogFile", keys, "JournalFile", recorded);
+        Simulation.GameStats replay = runGame("ReplayFile", keys, "JournalFile", replayed, "RandomSeed", "0");
+
+        // the replay takes its seed from the recording, and the same key-presses at the same times play the same game
+        assertTrue(record.legalSets > 0 && record.illegalSets > 0);
+        assertArrayEquals(record.scores, replay.scores);
+        assertEquals(record.legalSets, replay.legalSets);
+        assertEquals(record.illegalSets, replay.illegalSets);
+        assertEquals(record.reshuffles, replay.reshuffles);
+        assertEquals(record.gameTimeNanos, replay.gameTimeNanos);
+        List<String> verdicts = verdicts(recorded);
+        assertEquals(record.claims, verdicts.size());
+        assertEquals(verdicts, verdicts(replayed));
+        assertEquals(Arrays.stream(record.scores).sum(), record.legalSets);
+    }
+}
@@ -0,0 +1,139 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UtilImplTest {
+
+    Config config;
+    UtilImpl util;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        config = new Config(new MockLogger(), properties);
+        util = new UtilImpl(config);
+    }
+
+    private List<Integer> fullDeck() {
+        return IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Counts the sets of the deck by testing every triple.
+     */
+    private int countSetsExhaustive(List<Integer> deck) {
+        int sets = 0;
+        for (int i = 0; i < deck.size(); ++i)
+            for (int j = i + 1; j < deck.size(); ++j)
+                for (int k = j + 1; k < deck.size(); ++k)
+                    if (util.testSet(new int[]{deck.get(i), deck.get(j), deck.get(k)}))
+                        ++sets;
+        return sets;
+    }
+
+    /**
+     * Checks the set rule directly on the features: each feature is the same on all cards or different on all.
+     */
+    private boolean isSetByDefinition(int[] cards) {
+        int[][] features = util.cardsToFeatures(cards);
+        for (int i = 0; i < config.featureCount; ++i) {
+            final int feature = i;
+            long distinct = Arrays.stream(features).mapToInt(f -> f[feature]).distinct().count();
+            if (distinct != 1 && distinct != cards.length) return false;
+        }
+        return true;
+    }
+
+    @Test
+    void cardToFeatures_FromTable() {
+        assertArrayEquals(new int[]{0, 0, 0, 0}, util.cardToFeatures(0));
+        assertArrayEquals(new int[]{2, 1, 0, 2}, util.cardToFeatures(2 * 27 + 9 + 2));
+
+        // callers get their own copy
+        util.cardToFeatures(5)[0] = 2;
+        assertArrayEquals(new int[]{0, 0, 1, 2}, util.cardToFeatures(5));
+    }
+
+    @Test
+    void testSet_MatchesDefinition() {
+        for (int a = 0; a < config.deckSize; ++a)
+            for (int b = a + 1; b < config.deckSize; ++b)
+                for (int c = b + 1; c < config.deckSize; c += 7) {
+                    int[] cards = {a, b, c};
+                    assertEquals(isSetByDefinition(cards), util.testSet(cards));
+                }
+    }
+
+    @Test
+    void testSet_FourValuesPerFeature() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "4");
+        properties.put("FeatureCount", "3");
+        config = new Config(new MockLogger(), properties);
+        util = new UtilImpl(config);
+
+        Random random = new Random(7);
+        for (int round = 0; round < 10000; ++round) {
+            int[] cards = random.ints(0, config.deckSize).distinct().limit(4).toArray();
+            assertEquals(isSetByDefinition(cards), util.testSet(cards));
+        }
+        assertTrue(util.testSet(new int[]{0, 21, 42, 63}));
+    }
+
+    @Test
+    void findSets_FullDeck() {
+        List<int[]> sets = util.findSets(fullDeck(), Integer.MAX_VALUE);
+
+        // a full deck of 81 cards holds 81 * 80 / 6 sets
+        assertEquals(1080, sets.size());
+        for (int[] set : sets) {
+            assertTrue(util.testSet(set));
+            assertTrue(set[0] < set[1] && set[1] < set[2]);
+        }
+    }
+
+    @Test
+    void findSets_RandomDecksMatchExhaustiveSearch() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; ++round) {
+            List<Integer> deck = fullDeck();
+            Collections.shuffle(deck, random);
+            deck = new ArrayList<>(deck.subList(0, 3 + random.nextInt(20)));
+
+            assertEquals(countSetsExhaustive(deck), util.findSets(deck, Integer.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    void findSets_StopsAtCount() {
+        assertEquals(1, util.findSets(fullDeck(), 1).size());
+    }
+
+    @Test
+    void findSets_NoSets() {
+        // cards 0, 1, 3, 4 differ only in the last two features and never complete each other
+        List<Integer> deck = Arrays.asList(0, 1, 3, 4);
+        assertTrue(util.findSets(deck, Integer.MAX_VALUE).isEmpty());
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
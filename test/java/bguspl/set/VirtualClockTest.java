@@ -0,0 +1,136 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualClockTest {
+
+    VirtualClock clock;
+    private final Object monitor = new Object();
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualClock();
+    }
+
+    /**
+     * Starts a thread that sleeps on the clock until a time, then runs an action, and waits until it is asleep.
+     */
+    private Thread sleeper(long wakeUp, Runnable action) throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            try {
+                clock.sleepUntil(wakeUp);
+                action.run();
+            } catch (InterruptedException ignored) {}
+        });
+        thread.setDaemon(true);
+        thread.start();
+        while (thread.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        return thread;
+    }
+
+    /**
+     * Keeps the calling thread runnable for a while of real time.
+     */
+    private static void spin(long millis) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() < end)
+            ;
+    }
+
+    @Test
+    void advanceTo_WakesTheSleepersInOrder() throws InterruptedException {
+        List<Long> woken = Collections.synchronizedList(new ArrayList<>());
+        Thread third = sleeper(30, () -> woken.add(30L));
+        Thread first = sleeper(10, () -> woken.add(10L));
+        Thread second = sleeper(20, () -> woken.add(20L));
+
+        clock.advanceTo(15);
+        first.join(1000);
+        assertEquals(15, clock.nanoTime());
+        assertFalse(first.isAlive());
+        assertTrue(second.isAlive() && third.isAlive());
+
+        clock.advanceTo(20);
+        second.join(1000);
+        assertTrue(third.isAlive());
+
+        clock.advanceTo(5); // the past
+        assertEquals(20, clock.nanoTime());
+        clock.advanceTo(30);
+        third.join(1000);
+        assertEquals(Arrays.asList(10L, 20L, 30L), woken);
+    }
+
+    @Test
+    void waitUntil_JumpsToTheEarliestSleeperOrTheDeadline() throws InterruptedException {
+        clock.drive(() -> false);
+        Thread sleeper = sleeper(100, () -> {});
+
+        synchronized (monitor) {
+            clock.waitUntil(monitor, 500);
+        }
+        assertEquals(100, clock.nanoTime());
+        sleeper.join(1000);
+
+        synchronized (monitor) {
+            clock.waitUntil(monitor, 500);
+        }
+        assertEquals(500, clock.nanoTime());
+
+        // the driver's own sleep just moves the clock
+        clock.sleep(1);
+        assertEquals(500 + TimeUnit.MILLISECONDS.toNanos(1), clock.nanoTime());
+    }
+
+    @Test
+    void waitUntil_LetsTheWokenThreadsSettle() throws InterruptedException {
+        clock.drive(() -> false);
+        AtomicBoolean acted = new AtomicBoolean();
+        sleeper(100, () -> {
+            spin(50); // longer than the driver's poll, still runnable
+            acted.set(true);
+        });
+
+        synchronized (monitor) {
+            clock.waitUntil(monitor, 500);
+        }
+        assertTrue(acted.get());
+        assertEquals(100, clock.nanoTime());
+    }
+
+    @Test
+    void waitUntil_StandsStillWhileTheGameIsBusy() throws InterruptedException {
+        AtomicBoolean busy = new AtomicBoolean(true);
+        clock.drive(busy::get);
+        Thread worker = new Thread(() -> {
+            spin(50);
+            busy.set(false);
+            clock.idle();
+        });
+        worker.start();
+
+        // the caller re-checks its condition before time moves on
+        synchronized (monitor) {
+            clock.waitUntil(monitor, 500);
+        }
+        assertFalse(busy.get());
+        assertEquals(0, clock.nanoTime());
+
+        synchronized (monitor) {
+            clock.waitUntil(monitor, 500);
+        }
+        assertEquals(500, clock.nanoTime());
+        worker.join();
+    }
+}
@@ -0,0 +1,35 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClaimQueueTest {
+
+    ClaimQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        queue = new ClaimQueue();
+    }
+
+    @Test
+    void byTime_OrdersByTheClaimTimeThenByPlayer() {
+        queue.offer(1, new int[]{0, 1, 2}, 5);
+        queue.offer(0, new int[]{1, 2, 3}, 5);
+        queue.offer(2, new int[]{4, 5, 6}, 3); // read the clock first, but came last
+        List<ClaimQueue.Claim> claims = new ArrayList<>();
+        assertEquals(3, queue.drainTo(claims));
+        assertEquals(1, claims.get(0).player); // drained in arrival order
+
+        // claims made at the same time are served by player, whoever came first
+        claims.sort(ClaimQueue.BY_TIME);
+        assertEquals(2, claims.get(0).player);
+        assertEquals(0, claims.get(1).player);
+        assertEquals(1, claims.get(2).player);
+    }
+}
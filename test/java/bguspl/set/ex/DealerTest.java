@@ -1,14 +1,21 @@
 package bguspl.set.ex;
 
+import bguspl.set.Clock;
 import bguspl.set.Config;
 import bguspl.set.Env;
+import bguspl.set.InputLog;
+import bguspl.set.SystemClock;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import bguspl.set.VirtualClock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -18,10 +25,11 @@ class DealerTest {
 
     Dealer dealer;
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
 
     Player[] players;
+    Env env;
 
     @BeforeEach
     void setUp() {
@@ -36,10 +44,10 @@ class DealerTest {
         properties.put("PlayerKeys2", "85,73,79,80");
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = new int[config.tableSize];
+        cardToSlot = new int[config.deckSize];
 
-        Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
+        env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
 
         players = new Player[config.players];
@@ -50,6 +58,156 @@ class DealerTest {
         dealer = new Dealer(env, table, players);
     }
 
+    /**
+     * Replaces the game of setUp with one on a table of 3 rows and 4 columns (of 2 computer players unless set
+     * otherwise), whose SETs are found and tested by UtilImpl.
+     *
+     * @param clock    - the game's clock.
+     * @param ui       - the game's user interface.
+     * @param settings - more configuration properties, in pairs of a key and a value.
+     */
+    private void setUpGame(Clock clock, UserInterface ui, String... settings) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "2");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("EndGamePauseSeconds", "0");
+        properties.put("RandomSeed", "7");
+        for (int i = 0; i < settings.length; i += 2)
+            properties.put(settings[i], settings[i + 1]);
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        slotToCard = new int[config.tableSize];
+        cardToSlot = new int[config.deckSize];
+
+        env = new Env(logger, config, ui, new UtilImpl(config), clock);
+        table = new Table(env, slotToCard, cardToSlot);
+        players = new Player[config.players];
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; ++i)
+            players[i] = new Player(env, dealer, table, i, i < config.humanPlayers);
+    }
+
+    /**
+     * @return - the number of legal sets among the cards still in the game (in the deck and on the table).
+     */
+    private int setsLeft() {
+        List<Integer> cards = new ArrayList<>();
+        for (int card : dealer.deck.toArray())
+            cards.add(card);
+        for (int card : slotToCard)
+            if (card != -1)
+                cards.add(card);
+        return env.util.findSets(cards, Integer.MAX_VALUE).size();
+    }
+
+    @Test
+    void setsInGame_FollowTheCardsLeftUntilTheGameEnds() throws InterruptedException {
+        setUpGame(new SystemClock(), new MockUserInterface());
+        assertEquals(1080, dealer.setsInGame.count());
+
+        // deal, and take a set off the table if it has one (as if claimed), else take all the cards back
+        while (!dealer.shouldFinish()) {
+            dealer.deck.shuffle();
+            dealer.placeCardsOnTable();
+            assertEquals(setsLeft(), dealer.setsInGame.count());
+
+            int[][] onTable = table.setsOnTable.sets();
+            if (onTable.length > 0)
+                dealer.removeCardsFromTable(Arrays.stream(onTable[0]).map(card -> cardToSlot[card]).toArray());
+            else
+                dealer.removeAllCardsFromTable();
+            assertEquals(setsLeft(), dealer.setsInGame.count());
+        }
+
+        // the game ends when no set is left, with cards still in the game
+        assertEquals(0, setsLeft());
+        assertTrue(dealer.deck.size() + table.countCards() > 0);
+    }
+
+    @Test
+    void setsInGame_SetsOfTwoCards() {
+        // no card completes a single one, so every pair is tested
+        setUpGame(new SystemClock(), new MockUserInterface(), "FeatureSize", "2");
+        assertEquals(setsLeft(), dealer.setsInGame.count());
+        assertFalse(dealer.shouldFinish());
+    }
+
+    /**
+     * Runs the dealer on a thread of its own until the game's virtual clock reaches a time, then terminates the game.
+     */
+    private void runDealerUntil(VirtualClock clock, long time) throws InterruptedException {
+        Thread dealerThread = new Thread(dealer, "dealer");
+        dealerThread.start();
+        clock.sleepUntil(time);
+        dealer.terminate();
+        dealerThread.join();
+    }
+
+    @Test
+    void timerLoop_CountsDownAndReshufflesOnTime() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        GameLog log = new GameLog();
+        setUpGame(clock, log, "HumanPlayers", "2", "ComputerPlayers", "0", "TurnTimeoutSeconds", "3",
+                "TurnTimeoutWarningSeconds", "1", "TimerRefreshSeconds", "1", "TimerWarningRefreshSeconds", "0.25");
+        long second = TimeUnit.SECONDS.toNanos(1), quarter = second / 4;
+        runDealerUntil(clock, 7 * second);
+
+        // the dealer wakes up when the display changes: every second, and every quarter second in the last one
+        List<String> firstTurn = new ArrayList<>();
+        for (String event : log.countdowns)
+            if (Long.parseLong(event.split(" ")[0]) < 3 * second)
+                firstTurn.add(event);
+        assertEquals(Arrays.asList("0 3000 false", "0 3000 false", second + " 2000 false", 2 * second + " 1000 true",
+                (2 * second + quarter) + " 750 true", (2 * second + 2 * quarter) + " 500 true",
+                (2 * second + 3 * quarter) + " 250 true"), firstTurn);
+
+        // the countdown ends (and the deck is reshuffled) on time, every turn (the dealer may run on a little past
+        // 7 seconds before it sees the test terminate it, since the test thread isn't one the clock waits for)
+        Set<Long> turns = new TreeSet<>();
+        for (String event : log.countdowns)
+            if (event.endsWith(" 3000 false") && Long.parseLong(event.split(" ")[0]) < 7 * second)
+                turns.add(Long.parseLong(event.split(" ")[0]));
+        assertEquals(new TreeSet<>(Arrays.asList(0L, 3 * second, 6 * second)), turns);
+        assertTrue(log.countdowns.contains(3 * second + " 0 true"));
+        assertTrue(dealer.reshuffles() >= 2);
+    }
+
+    @Test
+    void sleepUntilWokenOrTimeout_WakesOnAClaim() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        GameLog log = new GameLog();
+        setUpGame(clock, log, "HumanPlayers", "2", "ComputerPlayers", "0", "TurnTimeoutSeconds", "3",
+                "TurnTimeoutWarningSeconds", "1");
+        long second = TimeUnit.SECONDS.toNanos(1), claimTime = second + second / 2;
+
+        // player 0 presses the keys of a set on the table between two refreshes of the countdown
+        int[][] sets = new int[1][];
+        Thread presser = new Thread(() -> {
+            try {
+                clock.sleepUntil(claimTime);
+            } catch (InterruptedException e) {
+                return;
+            }
+            sets[0] = table.setsOnTable.sets()[0];
+            for (int card : sets[0])
+                players[0].keyPressed(cardToSlot[card]);
+        });
+        presser.start();
+        runDealerUntil(clock, 2 * second);
+        presser.join();
+
+        // the SET is checked when claimed, and the countdown starts over then
+        assertNotNull(sets[0]);
+        assertEquals(Collections.singletonList(claimTime + " 0 1"), log.scores);
+        assertTrue(log.countdowns.contains(claimTime + " 3000 false"));
+        assertEquals(1, dealer.legalSets());
+        for (int card : sets[0])
+            assertEquals(-1, cardToSlot[card]);
+    }
+
     @Test
     void addPlayerToQueue(){
         int expectedQueueSize = dealer.playersToCheck.size() + 1;
@@ -64,11 +222,241 @@ class DealerTest {
         assertTrue(dealer.playersToCheck.contains(0));
     }
 
+    @Test
+    void playersToCheck_DrainsInArrivalOrder(){
+        long first = dealer.playersToCheck.offer(1, new int[]{0, 1, 2});
+        long second = dealer.playersToCheck.offer(0, new int[]{1, 2, 3});
+        assertTrue(first < second);
+
+        List<ClaimQueue.Claim> claims = new ArrayList<>();
+        assertEquals(2, dealer.playersToCheck.drainTo(claims));
+        assertEquals(1, claims.get(0).player);
+        assertArrayEquals(new int[]{1, 2, 3}, claims.get(1).slots);
+        assertTrue(dealer.playersToCheck.isEmpty());
+
+        // claims of an older epoch are dropped
+        dealer.playersToCheck.offer(0, new int[]{0, 1, 2});
+        dealer.playersToCheck.reset();
+        assertEquals(0, dealer.playersToCheck.size());
+        assertEquals(0, dealer.playersToCheck.drainTo(claims));
+    }
+
+    @Test
+    void inputReplay_PressesTheKeysWhenDue(){
+        int epoch = table.epoch();
+        InputReplay replay = new InputReplay(env, players, Arrays.asList(
+                new InputLog.Entry(0, 0, 1, epoch), new InputLog.Entry(1000, 1, 2, epoch)));
+        long origin = replay.nextDeadline();
+
+        assertTrue(replay.advance(origin));
+        assertEquals(1, players[0].queueOfActions.size());
+        assertEquals(0, players[1].queueOfActions.size());
+        assertEquals(origin + 1000, replay.nextDeadline());
+        assertFalse(replay.advance(origin + 999));
+
+        assertTrue(replay.advance(origin + 1000));
+        assertEquals(1, players[1].queueOfActions.size());
+        assertTrue(replay.isDone());
+        assertEquals(Long.MAX_VALUE, replay.nextDeadline());
+    }
+
+    @Test
+    void freezeWheel_CountsDownAndUnfreezes(){
+        long second = 1_000_000_000L;
+        FreezeWheel freezes = new FreezeWheel(0);
+        freezes.schedule(players[0], 3 * second);
+        freezes.schedule(players[1], 20 * second); // more than a rotation of the wheel
+        assertEquals(2, freezes.frozen());
+
+        // the first countdown update is when a whole second has passed
+        freezes.advance(0);
+        assertEquals(second, freezes.nextDeadline());
+
+        freezes.advance(3 * second);
+        assertEquals(1, freezes.frozen());
+        freezes.advance(20 * second);
+        assertEquals(0, freezes.frozen());
+        assertEquals(Long.MAX_VALUE, freezes.nextDeadline());
+    }
+
+    /**
+     * Deals a table of 3 rows and 6 columns to 4 players, on a virtual clock.
+     *
+     * @return - the slots of the legal SETs on the table, each one sorted.
+     */
+    private int[][] dealSets(VirtualClock clock) throws InterruptedException {
+        setUpGame(clock, new MockUserInterface(), "Columns", "6", "ComputerPlayers", "4");
+        dealer.deck.shuffle();
+        dealer.placeCardsOnTable();
+        return Arrays.stream(table.setsOnTable.sets())
+                .map(set -> Arrays.stream(set).map(card -> cardToSlot[card]).sorted().toArray())
+                .toArray(int[][]::new);
+    }
+
+    /**
+     * @return - two SETs sharing a slot (if shared) or sharing none (if not), null if there aren't any.
+     */
+    private static int[][] twoSets(int[][] sets, boolean shared) {
+        for (int i = 0; i < sets.length; ++i)
+            for (int j = i + 1; j < sets.length; ++j) {
+                int[] first = sets[i];
+                boolean sharing = Arrays.stream(sets[j]).anyMatch(slot -> Arrays.stream(first).anyMatch(s -> s == slot));
+                if (sharing == shared)
+                    return new int[][]{sets[i], sets[j]};
+            }
+        return null;
+    }
+
+    /**
+     * Places a player's tokens on slots and claims them, as the player thread does.
+     */
+    private void claim(int player, int[] slots) {
+        for (int slot : slots)
+            table.placeToken(player, slot);
+        players[player].setPlayerState(PlayerState.Waiting);
+        dealer.addPlayerToQueue(player);
+    }
+
+    private void assertOffTheTable(int[] cards) {
+        for (int card : cards)
+            assertEquals(-1, cardToSlot[card]);
+    }
+
+    @Test
+    void checkSet_ALaterClaimSharingASlotIsNotComplete() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        int[][] sets = twoSets(dealSets(clock), true);
+        assertNotNull(sets);
+        int[] cards = Arrays.stream(sets[0]).map(slot -> slotToCard[slot]).toArray();
+
+        // the player with the higher id claims first
+        clock.advanceTo(10);
+        claim(1, sets[0]);
+        clock.advanceTo(20);
+        claim(0, sets[1]);
+        dealer.checkSet();
+
+        assertEquals(SetState.Legal, players[1].set_state);
+        assertEquals(SetState.NotComplete, players[0].set_state);
+        assertEquals(PlayerState.Playing, players[0].state);
+        assertEquals(1, dealer.legalSets());
+        assertEquals(0, dealer.illegalSets());
+        assertOffTheTable(cards);
+        // the tokens of the SET that was not complete stay where they were, but for the shared slot
+        assertEquals(2, table.tokenCount(0));
+    }
+
+    @Test
+    void checkSet_AClaimWhoseTokensWentWithAnEarlierSetIsNotComplete() throws InterruptedException {
+        int[][] sets = twoSets(dealSets(new VirtualClock()), true);
+        assertNotNull(sets);
+        for (int slot : sets[1])
+            table.placeToken(0, slot);
+
+        claim(1, sets[0]);
+        dealer.checkSet();
+        // player 0 claims the slots of his tokens as he saw them, just as the dealer removed one of them
+        players[0].setPlayerState(PlayerState.Waiting);
+        dealer.playersToCheck.offer(0, sets[1]);
+        dealer.checkSet();
+
+        assertEquals(SetState.NotComplete, players[0].set_state);
+        assertEquals(PlayerState.Playing, players[0].state);
+        assertEquals(1, dealer.legalSets());
+        assertEquals(2, dealer.claimsChecked());
+    }
+
+    @Test
+    void checkSet_SeveralWinnersAreReplacedAtOnce() throws InterruptedException {
+        int[][] sets = twoSets(dealSets(new VirtualClock()), false);
+        assertNotNull(sets);
+        int[] cards = Arrays.stream(sets).flatMapToInt(Arrays::stream).map(slot -> slotToCard[slot]).toArray();
+        int deckSize = dealer.deck.size();
+        int epoch = table.epoch();
+
+        claim(2, sets[0]);
+        claim(3, sets[1]);
+        dealer.checkSet();
+
+        assertEquals(SetState.Legal, players[2].set_state);
+        assertEquals(SetState.Legal, players[3].set_state);
+        assertEquals(PlayerState.Playing, players[2].state);
+        assertEquals(PlayerState.Playing, players[3].state);
+        assertEquals(2, dealer.legalSets());
+        assertOffTheTable(cards);
+        // the table was closed and dealt again once, for both SETs
+        assertEquals(epoch + 2, table.epoch());
+        assertEquals(deckSize - cards.length, dealer.deck.size());
+        assertTrue(table.emptySlots.isEmpty());
+        assertEquals(0, table.tokenCount(2) + table.tokenCount(3));
+    }
+
+    /**
+     * Checks a batch of claims of every kind: a legal SET, a later one sharing a slot with it, a disjoint legal SET (if
+     * there is one), a SET that isn't legal, and the same after one of its tokens was removed.
+     *
+     * @return - the verdicts (the players' SET states), then the cards on the table.
+     */
+    private List<Object> checkABatch(String verifierThreads) throws InterruptedException {
+        setUpGame(new VirtualClock(), new MockUserInterface(), "Columns", "6", "ComputerPlayers", "5",
+                "VerifierThreads", verifierThreads);
+        dealer.deck.shuffle();
+        dealer.placeCardsOnTable();
+        int[][] sets = Arrays.stream(table.setsOnTable.sets())
+                .map(set -> Arrays.stream(set).map(card -> cardToSlot[card]).sorted().toArray())
+                .toArray(int[][]::new);
+        int[][] shared = twoSets(sets, true), disjoint = twoSets(sets, false);
+        assertNotNull(shared);
+
+        int[] other = disjoint == null ? null : disjoint[0] == shared[0] ? disjoint[1] : disjoint[0];
+        claim(0, shared[0]);
+        claim(1, shared[1]);
+        if (other != null)
+            claim(2, other);
+
+        // three slots the winners don't take, whose cards aren't a SET
+        int[] free = IntStream.range(0, slotToCard.length).filter(slot -> table.playersOn(slot).length == 0).toArray();
+        int[] illegal = null;
+        for (int i = 2; illegal == null; ++i)
+            if (!env.util.testSet(new int[]{slotToCard[free[0]], slotToCard[free[1]], slotToCard[free[i]]}))
+                illegal = new int[]{free[0], free[1], free[i]};
+        claim(3, illegal);
+        for (int slot : illegal)
+            table.placeToken(4, slot);
+        players[4].setPlayerState(PlayerState.Waiting);
+        dealer.playersToCheck.offer(4, illegal);
+        table.removeToken(4, illegal[0]);
+
+        dealer.startVerifiers();
+        dealer.checkSet();
+        List<Object> outcome = new ArrayList<>();
+        for (Player player : players)
+            outcome.add(player.set_state);
+        outcome.add(Arrays.toString(slotToCard));
+        return outcome;
+    }
+
+    @Test
+    void checkSet_TheVerifiersGiveTheSameVerdicts() throws InterruptedException {
+        List<Object> inline = checkABatch("0");
+        assertEquals(Arrays.asList(SetState.Legal, SetState.NotComplete), inline.subList(0, 2));
+        assertEquals(Arrays.asList(SetState.Illegal, SetState.NotComplete), inline.subList(3, 5));
+
+        assertEquals(inline, checkABatch("2"));
+        assertEquals(inline, checkABatch("5"));
+    }
+
     @Test
     void resestGame(){
         PlayerState expectedPlayerState = PlayerState.Playing;
         SetState expectedSetState = SetState.NotComplete;
 
+        table.placeToken(0, 0);
+        table.placeToken(1, 0);
+        // a player waiting for the verdict on a claim the reset drops
+        players[1].setPlayerState(PlayerState.Waiting);
+        dealer.playersToCheck.offer(1, new int[]{0, 1, 2});
+
         // call the method we are testing
         dealer.resetGame();
 
@@ -77,11 +465,43 @@ class DealerTest {
         for (int i = 0; i < players.length; ++i) {
             assertEquals(expectedPlayerState, players[i].state);
             assertEquals(expectedSetState, players[i].set_state);
-            assertTrue(players[i].mySet.size() == 0);
+            assertTrue(table.tokenCount(i) == 0);
         }
+        assertEquals(0, table.playersOn(0).length);
 
         assertTrue(dealer.playersToCheck.size() == 0);
     }
+
+    @Test
+    void placeCardsOnTable_DrawsFromTheDeck() throws InterruptedException {
+        int preDeckSize = dealer.deck.size();
+
+        // call the method we are testing
+        dealer.placeCardsOnTable();
+
+        // check that every slot got a card, and that the cards were taken out of the deck
+        assertEquals(preDeckSize - slotToCard.length, dealer.deck.size());
+        assertTrue(table.emptySlots.isEmpty());
+        for (int placed : slotToCard) {
+            assertNotEquals(-1, placed);
+            assertFalse(Arrays.stream(dealer.deck.toArray()).anyMatch(card -> card == placed));
+        }
+    }
+
+    @Test
+    void deck_SameSeedDealsTheSameCards() {
+        Deck first = new Deck(81, new Random(7));
+        Deck second = new Deck(81, new Random(7));
+        first.shuffle();
+        second.shuffle();
+        assertArrayEquals(first.toArray(), second.toArray());
+
+        // a card returned to the deck is the next one drawn
+        int card = first.draw();
+        assertEquals(80, first.size());
+        first.add(card);
+        assertEquals(card, first.draw());
+    }
     
     // @Test
     // void placeCardsOnTable_BigDeck(){
@@ -149,6 +569,24 @@ class DealerTest {
         public void announceWinner(int[] players) {}
     };
 
+    /**
+     * Records the countdown displayed and the scores, with the game's time.
+     */
+    class GameLog extends MockUserInterface {
+        final List<String> countdowns = Collections.synchronizedList(new ArrayList<>());
+        final List<String> scores = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {
+            countdowns.add(env.clock.nanoTime() + " " + millies + " " + warn);
+        }
+
+        @Override
+        public void setScore(int player, int score) {
+            scores.add(env.clock.nanoTime() + " " + player + " " + score);
+        }
+    }
+
     static class MockUtil implements Util {
         @Override
         public int[] cardToFeatures(int card) {
@@ -170,6 +608,11 @@ class DealerTest {
             return null;
         }
 
+        @Override
+        public int completeSet(int[] cards) {
+            return -1;
+        }
+
         @Override
         public void spin() {}
     }
@@ -13,10 +13,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -24,6 +28,7 @@ import static org.mockito.Mockito.when;
 class PlayerTest {
 
     Player player;
+    private Env env;
     @Mock
     Util util;
     @Mock
@@ -43,7 +48,7 @@ class PlayerTest {
     @BeforeEach
     void setUp() {
         // purposely do not find the configuration files (use defaults here).
-        Env env = new Env(logger, new Config(logger, (String) null), ui, util);
+        env = new Env(logger, new Config(logger, (String) null), ui, util);
         player = new Player(env, dealer, table, 0, false);
         assertInvariants();
     }
@@ -53,10 +58,39 @@ class PlayerTest {
         assertInvariants();
     }
 
+    /**
+     * @return a real table (rather than the mock) with a card in each slot, closed until the dealer opens it.
+     */
+    private Table tableWithCards() {
+        Table table = new Table(env);
+        for (int slot = 0; slot < table.slotToCard.length; ++slot) {
+            table.slotToCard[slot] = slot;
+            table.cardToSlot[slot] = slot;
+        }
+        return table;
+    }
+
+    /**
+     * Starts the player's thread and waits until it waits for the table or for a key-press.
+     */
+    private Thread startPlayer(Player player) throws InterruptedException {
+        Thread thread = new Thread(player, "player");
+        thread.setDaemon(true);
+        thread.start();
+        while (thread.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+        return thread;
+    }
+
+    private void stopPlayer(Player player, Thread thread) throws InterruptedException {
+        player.terminate();
+        thread.interrupt();
+        thread.join(1000);
+        assertFalse(thread.isAlive());
+    }
+
     void partiallyFillMySet(){
-        player.mySet.add(0);
         table.placeToken(player.id, 0);
-        player.mySet.add(1);
         table.placeToken(player.id, 1);
     }
     @Test
@@ -102,10 +136,136 @@ class PlayerTest {
         assertTrue(player.set_state == SetState.NotComplete);
     }
 
+    @Test
+    void queueOfActions_CoalescesAndCountsDrops(){
+        ActionRing ring = player.queueOfActions;
+        int[] slots = new int[ring.capacity()];
+
+        // the first key-press finds the queue empty (the player thread may be waiting for it)
+        assertEquals(0, ring.offer(5, 1));
+        assertEquals(1, ring.offer(2, 1));
+        assertEquals(2, ring.offer(2, 1)); // toggles slot 2 back
+        assertEquals(3, ring.offer(7, 0)); // made in an earlier epoch
+        assertEquals(-1, ring.offer(8, 1)); // full
+        assertEquals(1, ring.dropped());
+
+        assertEquals(1, ring.drainTo(slots, 1));
+        assertEquals(5, slots[0]);
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    void canPressKey_OnlyWhenTheKeyCanBeUsed(){
+        when(table.canPlay()).thenReturn(true);
+        assertTrue(player.canPressKey());
+
+        // waiting for a verdict, or holding one, the AI's key-presses would be ignored
+        player.setPlayerState(PlayerState.Waiting);
+        assertFalse(player.canPressKey());
+        player.setPlayerState(PlayerState.Playing);
+        player.setSetState(SetState.Legal);
+        assertFalse(player.canPressKey());
+        player.setSetState(SetState.NotComplete);
+
+        when(table.canPlay()).thenReturn(false);
+        assertFalse(player.canPressKey());
+    }
+
+    @Test
+    void run_TakesAVerdictDeliveredBeforeItParks() throws InterruptedException {
+        Table table = tableWithCards();
+        table.gameOn();
+        player = new Player(env, dealer, table, 0, false);
+        // the dealer checks the SET as soon as it is queued, before the player thread gets to park for the verdict
+        doAnswer(invocation -> {
+            player.setSetState(SetState.Legal);
+            player._notify(PlayerState.Playing);
+            return null;
+        }).when(dealer).addPlayerToQueue(0);
+        Thread thread = startPlayer(player);
+
+        for (int slot = 0; slot < 3; ++slot)
+            player.keyPressed(slot);
+        for (int i = 0; i < 1000 && (player.score() == 0 || !player.keysHandled()); ++i)
+            Thread.sleep(1);
+
+        // the unpark isn't lost: the player acts on the verdict and doesn't stay parked
+        assertEquals(1, player.score());
+        verify(ui).setScore(eq(player.id), eq(1));
+        assertEquals(PlayerState.Playing, player.state);
+        stopPlayer(player, thread);
+    }
+
+    @Test
+    void run_DropsTheKeysPressedInAnEarlierEpoch() throws InterruptedException {
+        Table table = tableWithCards();
+        player = new Player(env, dealer, table, 0, false);
+        Thread thread = startPlayer(player);
+        table.gameOn();
+        int stale = table.epoch();
+        table.gameOff(); // the dealer deals again, the cards may have changed
+        table.gameOn();
+
+        player.replayKey(1, stale);
+        player.replayKey(2, table.epoch());
+        for (int i = 0; i < 1000 && !player.keysHandled(); ++i)
+            Thread.sleep(1);
+
+        assertFalse(table.hasToken(player.id, 1));
+        assertTrue(table.hasToken(player.id, 2));
+        stopPlayer(player, thread);
+    }
+
+    @Test
+    void queueOfActions_WakesTheConsumerWhileItDrains() throws InterruptedException {
+        // a producer and a consumer waiting as the player thread does: on a condition, once the ring is empty
+        ActionRing ring = new ActionRing(4);
+        ReentrantLock lock = new ReentrantLock();
+        Condition inserted = lock.newCondition();
+        int presses = 1_000_000;
+        AtomicLong taken = new AtomicLong();
+        Thread consumer = new Thread(() -> {
+            int[] slots = new int[ring.capacity()];
+            while (taken.get() < presses) {
+                lock.lock();
+                try {
+                    while (ring.isEmpty())
+                        inserted.await();
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+                taken.addAndGet(ring.drainTo(slots, 1));
+            }
+        });
+        consumer.setDaemon(true);
+        consumer.start();
+
+        for (int press = 0; press < presses; ++press) {
+            int waiting;
+            long stuck = System.nanoTime() + 1_000_000_000L;
+            while ((waiting = ring.offer(press & 0xFFFF, 1)) == -1) // full: the consumer is behind (or was never woken)
+                assertTrue(System.nanoTime() < stuck, "the consumer missed the press that filled the ring");
+            if (waiting == 0) {
+                lock.lock();
+                try {
+                    inserted.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        consumer.join(1000);
+        consumer.interrupt();
+        assertEquals(presses, taken.get());
+    }
+
     @Test
     void clearPlayerSet(){
         player.clearPlayerSet();
-        assertTrue(player.mySet.size() == 0);
+        // the player's tokens live on the table's token board
+        verify(table).removeTokensOf(eq(player.id));
     }
     
     // @Test
@@ -143,4 +303,4 @@ class PlayerTest {
     //     // check that slot was removed from slotToPlace
     //     assertFalse(player.slotsToPlace.contains(anotherSlot));
     // }
-}
\ No newline at end of file
+}
@@ -4,13 +4,16 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -19,8 +22,8 @@ import static org.junit.jupiter.api.Assertions.*;
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
 
     @BeforeEach
     void setUp() {
@@ -35,8 +38,8 @@ class TableTest {
         properties.put("PlayerKeys2", "85,73,79,80");
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = new int[config.tableSize];
+        cardToSlot = new int[config.deckSize];
 
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
@@ -106,8 +109,8 @@ class TableTest {
         table.removeCard(1);
 
         // check that slot 1 updated to be empty in both arrays
-        assertEquals(null,  slotToCard[1]);
-        assertEquals(null,  cardToSlot[card]);
+        assertEquals(-1,  slotToCard[1]);
+        assertEquals(-1,  cardToSlot[card]);
 
         // check that slot 1 was added to emptySlot
         assertTrue(table.emptySlots.contains(1));
@@ -118,11 +121,193 @@ class TableTest {
         table.removeCard(0);
 
         // check that slot 0 remains empty in both arrays
-        assertEquals(null,  slotToCard[0]);
-        assertFalse(Arrays.asList(slotToCard).contains(0));
+        assertEquals(-1,  slotToCard[0]);
+        assertFalse(Arrays.stream(slotToCard).anyMatch(card -> card == 0));
 
         // check that 0 wasn't added one more time
-        assertTrue(Collections.frequency(table.emptySlots, 0) == 1);
+        assertTrue(table.emptySlots.contains(0));
+        assertEquals(slotToCard.length, table.emptySlots.size());
+    }
+
+    @Test
+    void placeCard_TakesTheSlotFromEmptySlots() {
+        table.placeCard(8, 2);
+
+        assertFalse(table.emptySlots.contains(2));
+        assertEquals(slotToCard.length - 1, table.emptySlots.size());
+        assertArrayEquals(new int[]{0, 1, 3}, table.emptySlots.toArray());
+    }
+
+    @Test
+    void placeCardsAndRemoveCards() {
+        table.placeCards(new int[]{8, 5, 3}, new int[]{2, 0, 3});
+
+        assertEquals(3, table.countCards());
+        assertEquals(5, slotToCard[0]);
+        assertEquals(3, cardToSlot[3]);
+        assertArrayEquals(new int[]{1}, table.emptySlots.toArray());
+
+        // slot 1 is empty, so nothing is removed from it
+        assertArrayEquals(new int[]{-1, 8}, table.removeCards(new int[]{1, 2}));
+        assertEquals(2, table.countCards());
+        assertEquals(-1, cardToSlot[8]);
+        assertArrayEquals(new int[]{1, 2}, table.emptySlots.toArray());
+    }
+
+    @Test
+    void emptySlots_TakeRandomTakesEachSlotOnce() {
+        Random random = new Random(0);
+        Set<Integer> taken = new HashSet<>();
+        for (int i = 0; i < slotToCard.length; ++i)
+            assertTrue(taken.add(table.emptySlots.takeRandom(random)));
+
+        assertTrue(table.emptySlots.isEmpty());
+        assertEquals(-1, table.emptySlots.takeRandom(random));
+        assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 3)), taken);
+    }
+
+    @Test
+    void setsOnTable_FollowPlacedAndRemovedCards() {
+        Env env = new Env(table.env.logger, table.env.config, new MockUserInterface(), new UtilImpl(table.env.config));
+        table = new Table(env, slotToCard, cardToSlot);
+
+        // cards 0, 1, 2 differ only in the last feature, which is different on all of them
+        table.placeCard(0, 3);
+        table.placeCard(1, 0);
+        table.placeCard(4, 1);
+        assertFalse(table.hasClue());
+
+        table.placeCard(2, 2);
+        assertTrue(table.hasClue());
+        assertArrayEquals(new Integer[]{0, 2, 3}, table.getHint());
+
+        table.removeCard(0);
+        assertFalse(table.hasClue());
+        assertNull(table.getHint());
+    }
+
+    @Test
+    void aiStrategies_ReadTheCardsOnTheTable() {
+        Env env = new Env(table.env.logger, table.env.config, new MockUserInterface(), new UtilImpl(table.env.config));
+        table = new Table(env, slotToCard, cardToSlot);
+        table.placeCard(0, 3);
+        table.placeCard(1, 0);
+        table.placeCard(2, 2);
+        table.placeCard(4, 1);
+        Player player = new Player(env, null, table, 0, false);
+
+        // perfect play presses the only legal set, then has nothing left to press
+        AiStrategy perfect = new AiStrategy.Perfect(env, new Random(0), 0);
+        Set<Integer> pressed = new HashSet<>();
+        for (int i = 0; i < 3; ++i) {
+            int slot = perfect.nextKey(table, player);
+            pressed.add(slot);
+            table.placeToken(player.id, slot);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(0, 2, 3)), pressed);
+        assertEquals(-1, perfect.nextKey(table, player));
+
+        // completing a pair aims at the card completing it whenever it is on the table, choice after choice (only cards 0,
+        // 1 and 2 complete each other here)
+        table.removeTokensOf(player.id);
+        AiStrategy.CompletePair pair = new AiStrategy.CompletePair(env, new Random(0));
+        int legal = 0;
+        for (int choice = 0; choice < 100; ++choice) {
+            assertTrue(pair.choose(table));
+            int[] target = pair.target.clone();
+            int third = env.util.completeSet(new int[]{slotToCard[target[0]], slotToCard[target[1]]});
+            if (third == 0 || third == 1 || third == 2) {
+                assertEquals(cardToSlot[third], target[2]);
+                ++legal;
+            }
+            assertEquals(3, Arrays.stream(target).distinct().count());
+        }
+        assertTrue(legal > 0);
+
+        // and presses three different cards
+        pair = new AiStrategy.CompletePair(env, new Random(0));
+        for (int i = 0; i < 3; ++i) {
+            int slot = pair.nextKey(table, player);
+            assertNotEquals(-1, slot);
+            assertFalse(table.hasToken(player.id, slot));
+            table.placeToken(player.id, slot);
+        }
+        assertEquals(3, table.tokenCount(player.id));
+    }
+
+    @Test
+    void placeAndRemoveToken() {
+        table.placeToken(0, 1);
+        table.placeToken(1, 1);
+        table.placeToken(1, 3);
+
+        assertTrue(table.hasToken(0, 1));
+        assertFalse(table.hasToken(0, 3));
+        assertEquals(2, table.tokenCount(1));
+        assertArrayEquals(new int[]{1, 3}, table.tokens(1));
+        assertArrayEquals(new int[]{0, 1}, table.playersOn(1));
+
+        assertTrue(table.removeToken(1, 1));
+        assertFalse(table.removeToken(1, 1)); // already removed
+        assertArrayEquals(new int[]{3}, table.tokens(1));
+        assertArrayEquals(new int[]{0}, table.playersOn(1));
+    }
+
+    @Test
+    void placeToken_TakesBackATokenOfAnEarlierEpoch() {
+        table.gameOn();
+        int epoch = table.epoch();
+        assertTrue(table.placeToken(0, 1, epoch));
+        assertTrue(table.hasToken(0, 1));
+
+        // the dealer closed the table (and removed the tokens) just before the token landed
+        table.gameOff();
+        table.removeTokens(new int[]{1, 2});
+        assertFalse(table.placeToken(0, 2, epoch));
+        assertFalse(table.hasToken(0, 2));
+        assertEquals(0, table.tokenCount(0));
+        assertEquals(0, table.playersOn(2).length);
+    }
+
+    @Test
+    void removeTokens_ClearsTheSlotsOfAllPlayers() {
+        table.placeToken(0, 0);
+        table.placeToken(0, 2);
+        table.placeToken(1, 2);
+        table.placeToken(1, 3);
+
+        table.removeTokens(new int[]{0, 2});
+
+        assertEquals(0, table.tokenCount(0));
+        assertArrayEquals(new int[]{3}, table.tokens(1));
+        assertEquals(0, table.playersOn(2).length);
+        assertArrayEquals(new int[]{1}, table.playersOn(3));
+    }
+
+    @Test
+    void _wait_ReturnsOnceTheTableOpens() throws InterruptedException {
+        Thread waiter = new Thread(() -> {
+            try {
+                table._wait();
+            } catch (InterruptedException ignored) {}
+        });
+        waiter.setDaemon(true);
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+
+        // closing a closed table doesn't release anyone
+        table.gameOff();
+        waiter.join(50);
+        assertTrue(waiter.isAlive());
+
+        table.gameOn();
+        waiter.join(1000);
+        assertFalse(waiter.isAlive());
+        assertTrue(table.canPlay());
+
+        // an open table doesn't hold anyone
+        table._wait();
     }
 
     static class MockUserInterface implements UserInterface {
@@ -173,6 +358,11 @@ class TableTest {
             return null;
         }
 
+        @Override
+        public int completeSet(int[] cards) {
+            return -1;
+        }
+
         @Override
         public void spin() {}
     }